@@ -0,0 +1,107 @@
+package classpath.scan;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * <code>ScanListener</code> that turns scan events into JDK Flight Recorder events.
+ * Internal to Classpath Scan, use {@link ScanOptions#withFlightRecorderEvents()} to register it.
+ *
+ * <p>Lives in its own source set since <code>jdk.jfr</code> is not part of the Java 8 API,
+ * <code>ScanOptions</code> only creates it through reflection.
+ */
+class JfrScanListener implements ScanListener {
+
+    @Name("classpath.scan.RootEnumeration")
+    @Label("Classpath Root Enumeration")
+    @Description("Enumeration and filtering of the resources of one classpath root")
+    @Category("Classpath Scan")
+    @StackTrace(false)
+    static class RootEnumerationEvent extends Event {
+	@Label("Root")
+	String root;
+
+	@Label("Resources")
+	int resources;
+
+	@Label("Enumeration Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long enumerationTime;
+    }
+
+    @Name("classpath.scan.ClassParse")
+    @Label("Classpath Class Parse")
+    @Description("Parsing of a single class resource")
+    @Category("Classpath Scan")
+    @Enabled(false)
+    @StackTrace(false)
+    static class ClassParseEvent extends Event {
+	@Label("Root")
+	String root;
+
+	@Label("Resource")
+	String resource;
+
+	@Label("Parse Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long parseTime;
+
+	@Label("Estimated Retained Size")
+	@DataAmount
+	long retainedSize;
+    }
+
+    @Name("classpath.scan.Query")
+    @Label("Classpath Query")
+    @Description("A query against a scanner")
+    @Category("Classpath Scan")
+    static class QueryEvent extends Event {
+	@Label("Query")
+	String query;
+
+	@Label("Results")
+	int results;
+
+	@Label("Query Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long queryTime;
+    }
+
+    public void rootEnumerated(Root root, long nanos) {
+	RootEnumerationEvent event = new RootEnumerationEvent();
+	if(event.isEnabled()) {
+	    event.root = root.toString();
+	    event.resources = root.getResources().size();
+	    event.enumerationTime = nanos;
+	    event.commit();
+	}
+    }
+
+    public void classParsed(Root root, String resource, long nanos, long retainedBytes) {
+	ClassParseEvent event = new ClassParseEvent();
+	if(event.isEnabled()) {
+	    event.root = root.toString();
+	    event.resource = resource;
+	    event.parseTime = nanos;
+	    event.retainedSize = retainedBytes;
+	    event.commit();
+	}
+    }
+
+    public void queryCompleted(String query, int results, long nanos) {
+	QueryEvent event = new QueryEvent();
+	if(event.isEnabled()) {
+	    event.query = query;
+	    event.results = results;
+	    event.queryTime = nanos;
+	    event.commit();
+	}
+    }
+}
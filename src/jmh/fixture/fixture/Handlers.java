@@ -0,0 +1,111 @@
+package fixture;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed set of classes scanned by the allocation benchmarks.  The benchmarks report
+ * allocation per class, so AllocationBenchmark.FIXTURE_CLASSES must be updated whenever
+ * a type is added or removed here.
+ */
+public interface Handlers { }
+
+@Retention(RetentionPolicy.RUNTIME)
+@interface Route {
+    String value() default "/";
+    String[] methods() default { "GET" };
+}
+
+@Retention(RetentionPolicy.RUNTIME)
+@interface Inject { }
+
+interface Handler extends Handlers {
+    Object handle(String path, Map<String,String> parameters);
+}
+
+interface Lifecycle {
+    void start();
+    void stop();
+}
+
+abstract class AbstractHandler implements Handler, Lifecycle {
+    protected volatile boolean running;
+
+    public void start() { running = true; }
+
+    public void stop() { running = false; }
+}
+
+@Route("/orders")
+class OrdersHandler extends AbstractHandler {
+    @Inject
+    private Repository repository;
+
+    public Object handle(String path, Map<String,String> parameters) {
+	return repository.find(parameters.get("id"));
+    }
+}
+
+@Route(value = "/customers", methods = { "GET", "POST" })
+class CustomersHandler extends AbstractHandler {
+    @Inject
+    private Repository repository;
+
+    public Object handle(String path, Map<String,String> parameters) {
+	return repository.findAll();
+    }
+}
+
+@Route("/health")
+class HealthHandler extends AbstractHandler {
+    public Object handle(String path, Map<String,String> parameters) {
+	return running ? "UP" : "DOWN";
+    }
+}
+
+class AdminHandler extends OrdersHandler {
+    @Override
+    public Object handle(String path, Map<String,String> parameters) {
+	return super.handle(path.substring(6), parameters);
+    }
+}
+
+interface Repository {
+    Object find(String id);
+    List<Object> findAll();
+}
+
+class MemoryRepository implements Repository {
+    private final Map<String,Object> values = new java.util.HashMap<>();
+
+    public Object find(String id) { return values.get(id); }
+
+    public List<Object> findAll() { return new java.util.ArrayList<>(values.values()); }
+}
+
+class CachingRepository extends MemoryRepository {
+    @Override
+    public Object find(@Inject String id) { return super.find(id.trim()); }
+}
+
+enum Status { ACTIVE, SUSPENDED, CLOSED }
+
+class Order {
+    private String id;
+    private Status status;
+    private long total;
+
+    public String getId() { return id; }
+    public Status getStatus() { return status; }
+    public long getTotal() { return total; }
+}
+
+class Customer {
+    private String id;
+    private List<Order> orders;
+
+    public String getId() { return id; }
+    public List<Order> getOrders() { return orders; }
+}
@@ -0,0 +1,139 @@
+package classpath.scan;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import classpath.scan.jarjar.tree.ClassNode;
+
+/**
+ * Allocation benchmarks for the inner loops of the scanner, meant to be run with the JMH GC
+ * profiler (<code>gradle jmh</code>).  The <code>gc.alloc.rate.norm</code> metric is compared
+ * against a stored baseline by <code>gradle jmhCheck</code>.
+ *
+ * <p>Benchmarks marked with <code>@OperationsPerInvocation(FIXTURE_CLASSES)</code> report
+ * allocation per scanned class, the others report allocation per query.  Everything runs
+ * against the fixture jar built from <code>src/jmh/fixture</code>, whose location is passed
+ * in the <code>classpath.scan.fixture</code> system property.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+    /**
+     * The number of classes in the fixture jar
+     */
+    static final int FIXTURE_CLASSES = 16;
+
+    private static final String[] PACKAGES = { "fixture" };
+
+    private ClassLoader loader;
+    private ClassScanner scanner;
+    private Class<?> handler;
+    private String[] descriptions;
+    private String[] classes;
+    private String[] resources;
+    private List<Pattern> patterns;
+
+    private final ClassNodeMatcher<String> names = new ClassNodeMatcher<String>() {
+	public Set<String> matches(ClassLoader classLoader, ClassNode node) {
+	    return Collections.singleton(node.name);
+	} };
+
+    @Setup
+    public void setup() throws ClassNotFoundException, MalformedURLException {
+	String fixture = System.getProperty("classpath.scan.fixture");
+	if(fixture == null) {
+	    throw new IllegalStateException("set classpath.scan.fixture to the fixture jar");
+	}
+
+	loader = new URLClassLoader(new URL[] { new File(fixture).toURI().toURL() }, null);
+	scanner = new ClassScanner(loader, PACKAGES);
+	handler = Class.forName("fixture.Handler", false, loader);
+	Set<String> all = scanner.getAll();
+	if(all.size() != FIXTURE_CLASSES) {
+	    throw new IllegalStateException("expected " + FIXTURE_CLASSES + " fixture classes, found " + all.size());
+	}
+
+	List<String> tmp = new ArrayList<>(all);
+	resources = tmp.toArray(new String[FIXTURE_CLASSES]);
+	classes = new String[FIXTURE_CLASSES];
+	descriptions = new String[FIXTURE_CLASSES];
+	for(int i = 0; i < FIXTURE_CLASSES; ++i) {
+	    classes[i] = resources[i].substring(0, resources[i].length() - ".class".length());
+	    descriptions[i] = "L" + classes[i] + ";";
+	}
+
+	patterns = Collections.singletonList(Pattern.compile(".*\\.class$"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXTURE_CLASSES)
+    public ClassScanner scan() {
+	return new ClassScanner(loader, PACKAGES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXTURE_CLASSES)
+    public void cleanDescription(final Blackhole blackhole) {
+	for(String description : descriptions) {
+	    blackhole.consume(ClassScanner.cleanDescription(description));
+	}
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXTURE_CLASSES)
+    public void cleanClass(final Blackhole blackhole) {
+	for(String name : classes) {
+	    blackhole.consume(ClassScanner.cleanClass(name));
+	}
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXTURE_CLASSES)
+    public void toClassName(final Blackhole blackhole) {
+	for(String resource : resources) {
+	    blackhole.consume(ClassScanner.toClassName(resource));
+	}
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIXTURE_CLASSES)
+    public void matchesAll(final Blackhole blackhole) {
+	for(String resource : resources) {
+	    blackhole.consume(Root.matchesAll(resource, patterns));
+	}
+    }
+
+    @Benchmark
+    public Set<String> findNodeMatches() {
+	return scanner.findNodeMatches(names);
+    }
+
+    @Benchmark
+    public Set<Class> findImplements() {
+	return scanner.findImplements(handler);
+    }
+}
@@ -0,0 +1,344 @@
+package classpath.scan;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import classpath.scan.jarjar.Type;
+import classpath.scan.jarjar.tree.AnnotationNode;
+
+/**
+ * Index of the annotations on every scanned type, including the values of their attributes.
+ * Retrieve it with {@link ClassScanner#getAnnotationIndex()} from a scanner constructed with
+ * <code>ScanOptions.withAnnotationIndex(true)</code>.  Queries never load the
+ * annotated types, so they are a cheap way to route on annotation values such as
+ * <code>@Path("/orders")</code>.
+ *
+ * <p>Both runtime visible and class retention annotations are indexed.  Attribute values are
+ * represented the same way as by reflection, except for the values which would need a class
+ * to be loaded: class literals become {@link ClassValue}s, enum constants become
+ * {@link EnumValue}s, and arrays become unmodifiable <code>List</code>s.  Nested annotations
+ * are not indexed.
+ *
+ * <p>Only attributes written into the class file are recorded.  Attributes left at their
+ * default value are not, queries which are passed the annotation type resolve defaults
+ * through reflection on that type.
+ */
+public final class AnnotationIndex {
+
+    /**
+     * A class literal used as an annotation value
+     */
+    public static final class ClassValue {
+	private final String name;
+
+	ClassValue(final String name) {
+	    this.name = name;
+	}
+
+	/**
+	 * @return The name of the class as written in source code, such as <code>java.lang.String[]</code>
+	 */
+	public String getName() { return name; }
+
+	@Override
+	public boolean equals(Object obj) {
+	    return (obj instanceof ClassValue) && name.equals(((ClassValue) obj).name);
+	}
+
+	@Override
+	public int hashCode() {
+	    return name.hashCode();
+	}
+
+	@Override
+	public String toString() {
+	    return name + ".class";
+	}
+    }
+
+    /**
+     * An enum constant used as an annotation value
+     */
+    public static final class EnumValue {
+	private final String type;
+	private final String name;
+
+	EnumValue(final String type, final String name) {
+	    this.type = type;
+	    this.name = name;
+	}
+
+	/**
+	 * @return The binary name of the enum type
+	 */
+	public String getType() { return type; }
+
+	/**
+	 * @return The name of the enum constant
+	 */
+	public String getName() { return name; }
+
+	@Override
+	public boolean equals(Object obj) {
+	    if(!(obj instanceof EnumValue)) {
+		return false;
+	    }
+
+	    EnumValue that = (EnumValue) obj;
+	    return type.equals(that.type) && name.equals(that.name);
+	}
+
+	@Override
+	public int hashCode() {
+	    return (31 * type.hashCode()) + name.hashCode();
+	}
+
+	@Override
+	public String toString() {
+	    return type + "." + name;
+	}
+    }
+
+    private static final class ValueKey {
+	final String annotation;
+	final String attribute;
+	final Object value;
+
+	ValueKey(final String annotation, final String attribute, final Object value) {
+	    this.annotation = annotation;
+	    this.attribute = attribute;
+	    this.value = value;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if(!(obj instanceof ValueKey)) {
+		return false;
+	    }
+
+	    ValueKey that = (ValueKey) obj;
+	    return annotation.equals(that.annotation) && attribute.equals(that.attribute) && value.equals(that.value);
+	}
+
+	@Override
+	public int hashCode() {
+	    return (annotation.hashCode() * 961) + (attribute.hashCode() * 31) + value.hashCode();
+	}
+    }
+
+    //annotation name -> annotated type -> explicitly written attributes
+    private final Map<String,Map<String,Map<String,Object>>> types = new HashMap<>();
+    private final Map<ValueKey,Set<String>> values = new HashMap<>();
+
+    AnnotationIndex() { }
+
+    /**
+     * Adds the annotations of a class.  Only called while the scanner is being constructed,
+     * once per class, so the annotations of a shadowed copy of a class are never indexed.
+     */
+    @SuppressWarnings("unchecked")
+    void add(final ParsedClass pc) {
+	String type = ClassScanner.cleanClass(pc.node.name);
+	add(type, (List<AnnotationNode>) pc.node.visibleAnnotations);
+	add(type, (List<AnnotationNode>) pc.node.invisibleAnnotations);
+    }
+
+    private void add(final String type, final List<AnnotationNode> annotations) {
+	for(AnnotationNode annotationNode : ClassScanner.safe(annotations)) {
+	    String annotation = ClassScanner.cleanDescription(annotationNode.desc);
+	    Map<String,Object> attributes = new LinkedHashMap<>();
+	    List<?> nodeValues = (annotationNode.values == null) ? Collections.emptyList() : annotationNode.values;
+	    for(int i = 0; i + 1 < nodeValues.size(); i += 2) {
+		String attribute = (String) nodeValues.get(i);
+		Object value = fromAsm(nodeValues.get(i + 1));
+		if(value == null) {
+		    continue;
+		}
+
+		attributes.put(attribute, value);
+		index(new ValueKey(annotation, attribute, value), type);
+		if(value instanceof List) {
+		    for(Object element : (List<?>) value) {
+			index(new ValueKey(annotation, attribute, element), type);
+		    }
+		}
+	    }
+
+	    Map<String,Map<String,Object>> annotated = types.get(annotation);
+	    if(annotated == null) {
+		annotated = new LinkedHashMap<>();
+		types.put(annotation, annotated);
+	    }
+
+	    annotated.put(type, Collections.unmodifiableMap(attributes));
+	}
+    }
+
+    private void index(final ValueKey key, final String type) {
+	Set<String> set = values.get(key);
+	if(set == null) {
+	    set = new LinkedHashSet<>();
+	    values.put(key, set);
+	}
+
+	set.add(type);
+    }
+
+    /**
+     * Converts a value read by ASM into its indexed form, <code>null</code> if it is not indexed
+     */
+    private static Object fromAsm(final Object value) {
+	if(value instanceof Type) {
+	    return new ClassValue(((Type) value).getClassName());
+	}
+	else if(value instanceof String[]) {
+	    String[] enumValue = (String[]) value;
+	    return new EnumValue(Type.getType(enumValue[0]).getClassName(), enumValue[1]);
+	}
+	else if(value instanceof AnnotationNode) {
+	    return null;
+	}
+	else if(value instanceof List) {
+	    List<Object> ret = new ArrayList<>();
+	    for(Object element : (List<?>) value) {
+		Object converted = fromAsm(element);
+		if(converted != null) {
+		    ret.add(converted);
+		}
+	    }
+
+	    return Collections.unmodifiableList(ret);
+	}
+	else if(value != null && value.getClass().isArray()) {
+	    //primitive arrays
+	    List<Object> ret = new ArrayList<>();
+	    for(int i = 0; i < Array.getLength(value); ++i) {
+		ret.add(Array.get(value, i));
+	    }
+
+	    return Collections.unmodifiableList(ret);
+	}
+	else {
+	    return value;
+	}
+    }
+
+    /**
+     * Converts a value passed to a query into its indexed form
+     */
+    private static Object fromJava(final Object value) {
+	if(value instanceof Class) {
+	    return new ClassValue(Type.getType((Class<?>) value).getClassName());
+	}
+	else if(value instanceof Enum) {
+	    Enum<?> enumValue = (Enum<?>) value;
+	    return new EnumValue(enumValue.getDeclaringClass().getName(), enumValue.name());
+	}
+	else if(value != null && value.getClass().isArray()) {
+	    List<Object> ret = new ArrayList<>();
+	    for(int i = 0; i < Array.getLength(value); ++i) {
+		ret.add(fromJava(Array.get(value, i)));
+	    }
+
+	    return ret;
+	}
+	else {
+	    return value;
+	}
+    }
+
+    private static Object defaultValue(final Class<? extends Annotation> annotation, final String attribute) {
+	try {
+	    Method method = annotation.getMethod(attribute);
+	    return fromJava(method.getDefaultValue());
+	}
+	catch(NoSuchMethodException ex) {
+	    return null;
+	}
+    }
+
+    /**
+     * @param annotation The binary name of the annotation type
+     * @return The names of the types annotated with <code>annotation</code>
+     */
+    public Set<String> findTypesAnnotatedWith(final String annotation) {
+	Map<String,Map<String,Object>> annotated = types.get(annotation);
+	return (annotated == null) ? Collections.<String>emptySet() : Collections.unmodifiableSet(annotated.keySet());
+    }
+
+    /**
+     * @see #findTypesAnnotatedWith(String)
+     */
+    public Set<String> findTypesAnnotatedWith(final Class<? extends Annotation> annotation) {
+	return findTypesAnnotatedWith(annotation.getName());
+    }
+
+    /**
+     * Finds the types annotated with <code>annotation</code> where an attribute has a given value.
+     * For array attributes, a type matches if the array equals <code>value</code> or contains it.
+     * Only explicitly written attributes are considered.
+     *
+     * @param annotation The binary name of the annotation type
+     * @param attribute The name of the annotation attribute
+     * @param value The value to look for.  <code>Class</code> and <code>Enum</code> values
+     * are converted to {@link ClassValue}s and {@link EnumValue}s, arrays to <code>List</code>s
+     * @return The names of the matching types
+     */
+    public Set<String> findTypesAnnotatedWith(final String annotation, final String attribute, final Object value) {
+	Set<String> ret = values.get(new ValueKey(annotation, attribute, fromJava(value)));
+	return (ret == null) ? Collections.<String>emptySet() : Collections.unmodifiableSet(ret);
+    }
+
+    /**
+     * Same as <code>findTypesAnnotatedWith(annotation.getName(), attribute, value)</code>, except
+     * when <code>value</code> is the default value of the attribute.  In that case types whose
+     * annotation leaves the attribute at its default also match.
+     *
+     * @see #findTypesAnnotatedWith(String, String, Object)
+     */
+    public Set<String> findTypesAnnotatedWith(final Class<? extends Annotation> annotation, final String attribute,
+					      final Object value) {
+	Set<String> explicit = findTypesAnnotatedWith(annotation.getName(), attribute, value);
+	Map<String,Map<String,Object>> annotated = types.get(annotation.getName());
+	Object defaultValue = defaultValue(annotation, attribute);
+	if(annotated == null || defaultValue == null || !defaultValue.equals(fromJava(value))) {
+	    return explicit;
+	}
+
+	Set<String> ret = new LinkedHashSet<>(explicit);
+	for(Map.Entry<String,Map<String,Object>> entry : annotated.entrySet()) {
+	    if(!entry.getValue().containsKey(attribute)) {
+		ret.add(entry.getKey());
+	    }
+	}
+
+	return Collections.unmodifiableSet(ret);
+    }
+
+    /**
+     * Returns the explicitly written attributes of an annotation on a type.
+     *
+     * @param type The binary name of the annotated type
+     * @param annotation The binary name of the annotation type
+     * @return The attributes by name, or <code>null</code> if the type does not have the annotation
+     */
+    public Map<String,Object> getAttributes(final String type, final String annotation) {
+	Map<String,Map<String,Object>> annotated = types.get(annotation);
+	return (annotated == null) ? null : annotated.get(type);
+    }
+
+    /**
+     * @see #getAttributes(String, String)
+     */
+    public Map<String,Object> getAttributes(final String type, final Class<? extends Annotation> annotation) {
+	return getAttributes(type, annotation.getName());
+    }
+}
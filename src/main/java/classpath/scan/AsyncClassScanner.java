@@ -0,0 +1,188 @@
+package classpath.scan;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Builds a <code>ClassScanner</code> in the background so the scan does not sit on the
+ * critical path of the constructing thread.  Constructing an <code>AsyncClassScanner</code>
+ * returns immediately, roots are then enumerated and parsed in parallel on the executor from
+ * the <code>ScanOptions</code>, or on {@link #defaultExecutor()} if the options have none.
+ *
+ * <p>Queries return <code>CompletableFuture</code>s which complete once the scan has finished
+ * and the query has run on the executor.  Every query needs every root, so no query result
+ * is available before the whole scan has finished.  Use {@link #join()} to block until the
+ * <code>ClassScanner</code> is ready and then query it directly.
+ */
+public class AsyncClassScanner {
+
+    private static volatile Executor defaultExecutor;
+
+    /**
+     * Returns the executor used when the <code>ScanOptions</code> have none.  On JVMs
+     * supporting virtual threads this is a virtual thread per task executor, otherwise
+     * it is the common <code>ForkJoinPool</code>.
+     *
+     * @return The default executor
+     */
+    public static Executor defaultExecutor() {
+	Executor ret = defaultExecutor;
+	if(ret == null) {
+	    synchronized(AsyncClassScanner.class) {
+		ret = defaultExecutor;
+		if(ret == null) {
+		    ret = defaultExecutor = virtualThreadExecutor();
+		}
+	    }
+	}
+
+	return ret;
+    }
+
+    private static Executor virtualThreadExecutor() {
+	try {
+	    //looked up reflectively to keep running on JVMs without virtual threads
+	    Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	    return (ExecutorService) factory.invoke(null);
+	}
+	catch(ReflectiveOperationException | RuntimeException ex) {
+	    return ForkJoinPool.commonPool();
+	}
+    }
+
+    private final CompletableFuture<ClassScanner> scanner;
+    private final Executor executor;
+
+    /**
+     * Starts scanning all classes available to classLoader in the passed packages.
+     *
+     * @param classLoader The classloader to use for scanning for classes.
+     * @param packages Only classes in these packages will be made available to the <code>ClassScanner</code>
+     */
+    public AsyncClassScanner(final ClassLoader classLoader, final String[] packages) {
+	this(classLoader, packages, null, ScanOptions.DEFAULT);
+    }
+
+    /**
+     * Starts scanning all classes available to classLoader in the passed packages
+     * which match the passed patterns.
+     *
+     * @param classLoader The classloader to use for scanning for classes.
+     * @param packages Only classes in these packages will be made available to the <code>ClassScanner</code>
+     * @param patterns Only classes that match these patters will be made available to the <code>ClassScanner</code>
+     * @param options The options controlling the scan
+     */
+    public AsyncClassScanner(final ClassLoader classLoader, final String[] packages, final Pattern[] patterns,
+			     final ScanOptions options) {
+	ScanOptions tmp = (options == null) ? ScanOptions.DEFAULT : options;
+	final ScanOptions fixed = (tmp.getExecutor() == null) ? tmp.withExecutor(defaultExecutor()) : tmp;
+	this.executor = fixed.getExecutor();
+	this.scanner = CompletableFuture.supplyAsync(new Supplier<ClassScanner>() {
+		public ClassScanner get() {
+		    return new ClassScanner(classLoader, packages, patterns, fixed);
+		} }, executor);
+    }
+
+    /**
+     * @return A future which completes with the <code>ClassScanner</code> once scanning has finished
+     */
+    public CompletableFuture<ClassScanner> getScanner() {
+	return scanner;
+    }
+
+    /**
+     * @return Whether or not scanning has finished, either normally or with an exception
+     */
+    public boolean isDone() {
+	return scanner.isDone();
+    }
+
+    /**
+     * Blocks until scanning has finished.
+     *
+     * @return The finished <code>ClassScanner</code>
+     */
+    public ClassScanner join() {
+	return scanner.join();
+    }
+
+    /**
+     * Runs an arbitrary query once scanning has finished.
+     *
+     * @param query The query to run against the finished scanner
+     * @return A future which completes with the result of the query
+     */
+    public <T> CompletableFuture<T> query(final Function<ClassScanner,T> query) {
+	return scanner.thenApplyAsync(query, executor);
+    }
+
+    /**
+     * @see ClassScanner#findNodeMatches(ClassNodeMatcher)
+     */
+    public <T> CompletableFuture<Set<T>> findNodeMatches(final ClassNodeMatcher<T> matcher) {
+	return query(new Function<ClassScanner,Set<T>>() {
+		public Set<T> apply(ClassScanner scanner) {
+		    return scanner.findNodeMatches(matcher);
+		} });
+    }
+
+    /**
+     * @see ClassScanner#findMethodsAnnotatedWith(Class)
+     */
+    public CompletableFuture<Set<Method>> findMethodsAnnotatedWith(final Class<? extends Annotation> annotation) {
+	return query(new Function<ClassScanner,Set<Method>>() {
+		public Set<Method> apply(ClassScanner scanner) {
+		    return scanner.findMethodsAnnotatedWith(annotation);
+		} });
+    }
+
+    /**
+     * @see ClassScanner#findFieldsAnnotatedWith(Class)
+     */
+    public CompletableFuture<Set<Field>> findFieldsAnnotatedWith(final Class<? extends Annotation> annotation) {
+	return query(new Function<ClassScanner,Set<Field>>() {
+		public Set<Field> apply(ClassScanner scanner) {
+		    return scanner.findFieldsAnnotatedWith(annotation);
+		} });
+    }
+
+    /**
+     * @see ClassScanner#findTypesAnnotatedWith(Class)
+     */
+    public CompletableFuture<Set<Class>> findTypesAnnotatedWith(final Class<? extends Annotation> annotation) {
+	return query(new Function<ClassScanner,Set<Class>>() {
+		public Set<Class> apply(ClassScanner scanner) {
+		    return scanner.findTypesAnnotatedWith(annotation);
+		} });
+    }
+
+    /**
+     * @see ClassScanner#findSubTypesOf(Class)
+     */
+    public CompletableFuture<Set<Class>> findSubTypesOf(final Class<?> type) {
+	return query(new Function<ClassScanner,Set<Class>>() {
+		public Set<Class> apply(ClassScanner scanner) {
+		    return scanner.findSubTypesOf(type);
+		} });
+    }
+
+    /**
+     * @see ClassScanner#findImplements(Class)
+     */
+    public CompletableFuture<Set<Class>> findImplements(final Class<?> type) {
+	return query(new Function<ClassScanner,Set<Class>>() {
+		public Set<Class> apply(ClassScanner scanner) {
+		    return scanner.findImplements(type);
+		} });
+    }
+}
@@ -11,10 +11,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 import classpath.scan.jarjar.ClassReader;
 import classpath.scan.jarjar.tree.AnnotationNode;
@@ -23,9 +28,23 @@ import classpath.scan.jarjar.tree.FieldNode;
 import classpath.scan.jarjar.tree.MethodNode;
 import classpath.scan.jarjar.tree.MethodNode;
 
+/**
+ * Scans class files without loading them, answering queries from the parsed <code>ClassNode</code>s.
+ *
+ * <p>A <code>ClassScanner</code> never changes after construction and is safe to query from
+ * any number of threads.  The finder methods of this class are thread safe, custom
+ * {@link ClassNodeMatcher}s only need to be thread safe when the same matcher is used from
+ * several threads, or passed to {@link #findNodeMatchesInParallel(ClassNodeMatcher)}.  Constructing
+ * the scanner with <code>ScanOptions.withQueryCache(true)</code> memoizes the finder methods,
+ * see {@link #findNodeMatches(Object, ClassNodeMatcher)} for memoizing custom queries.
+ */
 public class ClassScanner extends ResourceScanner {
 
-    private final Map<String,ClassNode> nodeCache;
+    private final NodeCache nodeCache;
+    private final ReferenceIndex referenceIndex;
+    private final MethodIndex methodIndex;
+    private final AnnotationIndex annotationIndex;
+    private final QueryCache queryCache;
 
     private static final Pattern PATTERN = Pattern.compile(".*\\.class$");
 
@@ -73,34 +92,368 @@ public class ClassScanner extends ResourceScanner {
      * @param patterns Only classes that match these patters will be made available to the <code>ClassScanner</code>
      */
     public ClassScanner(final ClassLoader classLoader, final String[] packages, final Pattern[] patterns) {
-	super(fixClassLoader(classLoader), fixPrefixes(packagesToPrefixes(packages)), fixPatterns(patterns, PATTERN));
-	this.nodeCache = Collections.unmodifiableMap(populateNodeCache());
+	this(classLoader, packages, patterns, ScanOptions.DEFAULT);
+    }
+
+    /**
+     * Same as <code>ClassScanner(classLoader, packages, patterns)</code>, but lets
+     * you control how the scan is performed, for example by registering a {@link ScanListener}.
+     *
+     * @param classLoader The classloader to use for scanning for classes.
+     * @param packages Only classes in these packages will be made available to the <code>ClassScanner</code>
+     * @param patterns Only classes that match these patters will be made available to the <code>ClassScanner</code>
+     * @param options The options controlling the scan
+     */
+    public ClassScanner(final ClassLoader classLoader, final String[] packages, final Pattern[] patterns,
+			final ScanOptions options) {
+	super(fixClassLoader(classLoader), fixPrefixes(packagesToPrefixes(packages)), fixPatterns(patterns, PATTERN), options);
+	this.nodeCache = new NodeCache(getOptions(), new NodeCache.Loader() {
+		public ClassNode load(Root root, String resource) {
+		    return parse(root, resource, false).node;
+		} });
+	this.referenceIndex = getOptions().isReferenceIndex() ? new ReferenceIndex() : null;
+	this.methodIndex = getOptions().isMethodIndex() ? new MethodIndex() : null;
+	this.annotationIndex = getOptions().isAnnotationIndex() ? new AnnotationIndex() : null;
+	this.queryCache = getOptions().isQueryCache() ? new QueryCache() : null;
+	populateNodeCache();
+	nodeCache.freeze();
+	if(referenceIndex != null) {
+	    referenceIndex.freeze();
+	}
+
+	if(methodIndex != null) {
+	    methodIndex.freeze();
+	}
+    }
+
+    /**
+     * Returns the counters of the cache holding the parsed classes of this scanner.
+     * See {@link ScanOptions#withNodeCacheLimits(int, long)} for bounding the cache.
+     *
+     * @return A snapshot of the cache counters
+     */
+    public NodeCacheStats getNodeCacheStats() {
+	return nodeCache.getStats();
+    }
+
+    /**
+     * Forgets every memoized query result.  Does nothing unless the scanner was constructed
+     * with <code>ScanOptions.withQueryCache(true)</code>.
+     */
+    public void clearQueryCache() {
+	if(queryCache != null) {
+	    queryCache.clear();
+	}
+    }
+
+    /**
+     * Returns the index of the annotations, and their attribute values, on the scanned types.
+     *
+     * @return The annotation index
+     * @throws IllegalStateException If the scanner was not constructed with
+     * <code>ScanOptions.withAnnotationIndex(true)</code>
+     */
+    public AnnotationIndex getAnnotationIndex() {
+	if(annotationIndex == null) {
+	    throw new IllegalStateException("annotation index not enabled, use ScanOptions.withAnnotationIndex(true)");
+	}
+
+	return annotationIndex;
+    }
+
+    /**
+     * Returns the index of the types, methods, and fields referenced by the scanned classes.
+     *
+     * @return The reference index
+     * @throws IllegalStateException If the scanner was not constructed with
+     * <code>ScanOptions.withReferenceIndex(true)</code>
+     */
+    public ReferenceIndex getReferenceIndex() {
+	if(referenceIndex == null) {
+	    throw new IllegalStateException("reference index not enabled, use ScanOptions.withReferenceIndex(true)");
+	}
+
+	return referenceIndex;
+    }
+
+    /**
+     * Returns the index of the signatures of the methods declared by the scanned classes.
+     *
+     * @return The method index
+     * @throws IllegalStateException If the scanner was not constructed with
+     * <code>ScanOptions.withMethodIndex(true)</code>
+     */
+    public MethodIndex getMethodIndex() {
+	if(methodIndex == null) {
+	    throw new IllegalStateException("method index not enabled, use ScanOptions.withMethodIndex(true)");
+	}
+
+	return methodIndex;
     }
     
-    private static String toClassName(final String resource) {
+    static String toClassName(final String resource) {
 	return resource.replace("/", ".").replace(File.separator, ".").replace(".class", "");
     }
 
-    private Map<String,ClassNode> populateNodeCache() {
-	Map<String,ClassNode> tmp = new LinkedHashMap<>();
-	ProcessInputStream<ClassNode> processor = new ProcessInputStream<ClassNode>() {
-	    public ClassNode process(InputStream istream) {
-		try {
-		    ClassReader creader = new ClassReader(istream);
-		    ClassNode cnode = new ClassNode();
-		    creader.accept(cnode, 0);
-		    return cnode;
+    private void populateNodeCache() {
+	//only needed to find shadowed classes, which a single root never has
+	final ResourceIndex index = (getRoots().size() > 1) ? new ResourceIndex(getRoots(), false) : null;
+	Executor executor = getOptions().getExecutor();
+	if(getOptions().getPipelineReaders() > 0) {
+	    pipeline((executor == null) ? AsyncClassScanner.defaultExecutor() : executor, index);
+	    return;
+	}
+
+	if(executor == null) {
+	    for(Root root : getRoots()) {
+		accept(root, parse(root, index), index);
+	    }
+
+	    return;
+	}
+
+	List<FutureTask<Map<String,ParsedClass>>> tasks = new ArrayList<>();
+	for(final Root root : getRoots()) {
+	    FutureTask<Map<String,ParsedClass>> task = new FutureTask<>(new Callable<Map<String,ParsedClass>>() {
+		    public Map<String,ParsedClass> call() {
+			return parse(root, index);
+		    } });
+	    tasks.add(task);
+	    executor.execute(task);
+	}
+
+	//run any task the executor has not started yet on this thread, that way
+	//waiting on the executor can never dead lock
+	for(int i = 0; i < tasks.size(); ++i) {
+	    FutureTask<Map<String,ParsedClass>> task = tasks.get(i);
+	    task.run();
+	    accept(getRoots().get(i), join(task), index);
+	}
+    }
+
+    /**
+     * Decides which copy of a class the scanner uses.  A class found in several roots is only
+     * parsed and indexed from the first of them, the copy a <code>ClassLoader</code> searching
+     * its roots in order would define.  Every scan mode applies this same rule.
+     *
+     * @param index Every resource of every root, or <code>null</code> if there is a single root
+     */
+    private static boolean provides(final ResourceIndex index, final Root root, final String resource) {
+	return index == null || index.find(resource) == root;
+    }
+
+    /**
+     * Scans with a {@link ScanPipeline}, see <code>ScanOptions.withPipeline</code>
+     */
+    private void pipeline(final Executor executor, final ResourceIndex index) {
+	final boolean withReferences = getOptions().isReferenceIndex();
+	//classes read from the ScanAgent, each class is read once per scan
+	final Set<String> live = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	final Map<Root,RootCache.Entry> entries = new IdentityHashMap<>();
+	RootCache cache = getOptions().getRootCache();
+	if(cache != null) {
+	    for(Root root : getRoots()) {
+		if(root.getLocation() != null) {
+		    entries.put(root, cache.entry(root.getLocation()));
+		}
+	    }
+	}
+
+	ScanOptions options = getOptions();
+	new ScanPipeline(getRoots(), options.getPipelineReaders(), options.getPipelineParsers(),
+			 options.getPipelineMaxBufferedBytes(), executor, new ScanPipeline.Stages() {
+		public boolean provides(Root root, String resource) {
+		    return ClassScanner.provides(index, root, resource);
+		}
+
+		public ParsedClass cached(Root root, String resource) {
+		    RootCache.Entry entry = entries.get(root);
+		    if(entry == null || liveBytes(root, resource) != null) {
+			return null;
+		    }
+
+		    //classes cached without references are parsed again like any other miss
+		    ParsedClass ret = entry.getClass(resource, root.stamp(resource));
+		    return (ret == null || (ret.references == null && withReferences)) ? null : ret;
 		}
-		catch(IOException ioe) {
-		    throw new RuntimeException(ioe);
+
+		public byte[] read(Root root, String resource) {
+		    byte[] ret = takeLiveBytes(root, resource);
+		    if(ret == null) {
+			return ClassScanner.this.read(root, resource);
+		    }
+
+		    live.add(resource);
+		    return ret;
 		}
-	    } };
 
-	for(Root root : getRoots()) {
-	    tmp.putAll(root.withStream(processor));
+		public ParsedClass parse(Root root, String resource, byte[] bytes) {
+		    ParsedClass ret = ClassScanner.this.parse(root, resource, bytes, withReferences);
+		    RootCache.Entry entry = entries.get(root);
+		    if(entry != null && !live.contains(resource)) {
+			entry.putClass(resource, root.stamp(resource), ret);
+		    }
+
+		    return ret;
+		}
+
+		public void accept(Root root, String resource, ParsedClass parsed) {
+		    ClassScanner.this.accept(root, resource, parsed, index);
+		} }).run();
+    }
+
+    /**
+     * Adds the parsed classes of a root to the node cache and indexes
+     */
+    private void accept(final Root root, final Map<String,ParsedClass> parsed, final ResourceIndex index) {
+	for(Map.Entry<String,ParsedClass> entry : parsed.entrySet()) {
+	    accept(root, entry.getKey(), entry.getValue(), index);
 	}
-	
-	return tmp;
+    }
+
+    /**
+     * Adds a parsed class to the node cache and indexes, unless the class is shadowed
+     * by an earlier root.  Every class is accepted at most once.
+     */
+    private void accept(final Root root, final String resource, final ParsedClass pc, final ResourceIndex index) {
+	if(!provides(index, root, resource)) {
+	    return;
+	}
+
+	nodeCache.put(root, resource, pc.node);
+	if(annotationIndex != null) {
+	    annotationIndex.add(pc);
+	}
+	if(referenceIndex != null) {
+	    referenceIndex.add(pc);
+	}
+
+	if(methodIndex != null) {
+	    methodIndex.add(pc);
+	}
+    }
+
+    private Map<String,ParsedClass> parse(final Root root, final ResourceIndex index) {
+	Map<String,ParsedClass> ret = new LinkedHashMap<>();
+	RootCache cache = getOptions().getRootCache();
+	RootCache.Entry cached = (cache == null || root.getLocation() == null) ? null : cache.entry(root.getLocation());
+	for(String resource : root.getResources()) {
+	    if(provides(index, root, resource)) {
+		ret.put(resource, parse(root, resource, cached));
+	    }
+	}
+
+	return ret;
+    }
+
+    private ParsedClass parse(final Root root, final String resource, final RootCache.Entry cached) {
+	//captured classes may have been changed by other agents, so they are neither taken
+	//from the cache nor stored in it as the contents of the root
+	byte[] live = takeLiveBytes(root, resource);
+	if(live != null) {
+	    return parse(root, resource, live, getOptions().isReferenceIndex());
+	}
+
+	if(cached == null) {
+	    return parse(root, resource, getOptions().isReferenceIndex());
+	}
+
+	long stamp = root.stamp(resource);
+	ParsedClass ret = cached.getClass(resource, stamp);
+	if(ret == null) {
+	    ret = parse(root, resource, getOptions().isReferenceIndex());
+	    cached.putClass(resource, stamp, ret);
+	}
+	else if(ret.references == null && getOptions().isReferenceIndex()) {
+	    //cached by a scanner that did not need references, only the
+	    //constant pool is needed so skip building another ClassNode
+	    ret = new ParsedClass(ret.node, ReferenceIndex.references(new ClassReader(read(root, resource))));
+	    cached.putClass(resource, stamp, ret);
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The bytes the {@link ScanAgent} captured for a class, <code>null</code> if there
+     * are none or the options do not use them
+     */
+    private byte[] liveBytes(final Root root, final String resource) {
+	return getOptions().isLiveClasses() ? ScanAgent.liveBytes(root.getClassLoader(), resource) : null;
+    }
+
+    /**
+     * Same as {@link #liveBytes(Root, String)}, but the agent forgets the bytes it returns
+     */
+    private byte[] takeLiveBytes(final Root root, final String resource) {
+	return getOptions().isLiveClasses() ? ScanAgent.takeLiveBytes(root.getClassLoader(), resource) : null;
+    }
+
+    private byte[] read(final Root root, final String resource) {
+	byte[] bytes = root.readBytes(resource);
+	getOptions().getListener().resourceRead(root, resource, bytes.length);
+	return bytes;
+    }
+
+    private ParsedClass parse(final Root root, final String resource, final boolean withReferences) {
+	return parse(root, resource, read(root, resource), withReferences);
+    }
+
+    private ParsedClass parse(final Root root, final String resource, final byte[] bytes, final boolean withReferences) {
+	long start = System.nanoTime();
+	ClassReader creader = new ClassReader(bytes);
+	ClassNode cnode = new ClassNode();
+	creader.accept(cnode, 0);
+	String[] references = withReferences ? ReferenceIndex.references(creader) : null;
+	long nanos = System.nanoTime() - start;
+
+	if(!getOptions().getListeners().isEmpty()) {
+	    getOptions().getListener().classParsed(root, resource, nanos, estimateRetainedSize(cnode));
+	}
+
+	return new ParsedClass(cnode, references);
+    }
+
+    //Rough object costs used to estimate the heap retained by a ClassNode.
+    //They do not need to be exact, only good enough to compare roots.
+    private static final int NODE_OVERHEAD = 128;
+    private static final int MEMBER_OVERHEAD = 96;
+    private static final int INSTRUCTION_OVERHEAD = 40;
+    private static final int STRING_OVERHEAD = 40;
+
+    private static long estimateSize(final String str) {
+	return (str == null) ? 0 : STRING_OVERHEAD + str.length();
+    }
+
+    private static long estimateSize(final List<?> annotations) {
+	return (annotations == null) ? 0 : annotations.size() * (long) NODE_OVERHEAD;
+    }
+
+    /**
+     * Estimates the heap retained by a parsed <code>ClassNode</code>.
+     */
+    @SuppressWarnings("unchecked")
+    static long estimateRetainedSize(final ClassNode node) {
+	long ret = NODE_OVERHEAD + estimateSize(node.name) + estimateSize(node.superName)
+	    + estimateSize(node.signature) + estimateSize(node.sourceFile)
+	    + estimateSize(node.visibleAnnotations) + estimateSize(node.invisibleAnnotations);
+	for(String intf : safe((List<String>) node.interfaces)) {
+	    ret += estimateSize(intf);
+	}
+
+	for(FieldNode fieldNode : safe((List<FieldNode>) node.fields)) {
+	    ret += MEMBER_OVERHEAD + estimateSize(fieldNode.name) + estimateSize(fieldNode.desc)
+		+ estimateSize(fieldNode.signature) + estimateSize(fieldNode.visibleAnnotations);
+	}
+
+	for(MethodNode methodNode : safe((List<MethodNode>) node.methods)) {
+	    ret += MEMBER_OVERHEAD + estimateSize(methodNode.name) + estimateSize(methodNode.desc)
+		+ estimateSize(methodNode.signature) + estimateSize(methodNode.visibleAnnotations)
+		+ (methodNode.instructions.size() * (long) INSTRUCTION_OVERHEAD)
+		+ estimateSize(methodNode.tryCatchBlocks) + estimateSize(methodNode.localVariables);
+	}
+
+	return ret;
     }
 
     /**
@@ -110,16 +463,119 @@ public class ClassScanner extends ResourceScanner {
      * @return The set of things that were found by the matcher
      */
     public <T> Set<T> findNodeMatches(final ClassNodeMatcher<T> matcher) {
+	return match(matcher.getClass().getName(), matcher);
+    }
+
+    /**
+     * Same as <code>findNodeMatches(matcher)</code>, but memoizes the result under <code>key</code>
+     * when the scanner was constructed with <code>ScanOptions.withQueryCache(true)</code>.  Later
+     * calls with an equal key return the memoized result without running <code>matcher</code>,
+     * and concurrent calls with an equal key wait for a single run.
+     *
+     * @param key Identifies the query, compared with <code>equals</code>
+     * @param matcher The Class Node Matcher used to locate things of interest
+     * @return The set of things that were found by the matcher
+     */
+    public <T> Set<T> findNodeMatches(final Object key, final ClassNodeMatcher<T> matcher) {
+	return memoize(Arrays.asList("findNodeMatches", key), new Callable<Set<T>>() {
+		public Set<T> call() {
+		    return match(String.valueOf(key), matcher);
+		} });
+    }
+
+    /**
+     * Same as <code>findNodeMatches(matcher)</code>, but splits the classes into chunks which are
+     * matched in parallel on the executor from the <code>ScanOptions</code>, or on
+     * {@link AsyncClassScanner#defaultExecutor()} if the options have none.  The calling thread
+     * also matches chunks the executor has not started yet.  <code>matcher</code> is called from
+     * several threads at once, so it must be thread safe.
+     *
+     * @param matcher The Class Node Matcher used to locate things of interest
+     * @return The set of things that were found by the matcher
+     */
+    public <T> Set<T> findNodeMatchesInParallel(final ClassNodeMatcher<T> matcher) {
+	long start = System.nanoTime();
+	Executor executor = getOptions().getExecutor();
+	if(executor == null) {
+	    executor = AsyncClassScanner.defaultExecutor();
+	}
+
+	List<FutureTask<Set<T>>> tasks = new ArrayList<>();
+	for(int from = 0; from < nodeCache.size(); from += QUERY_CHUNK_SIZE) {
+	    tasks.add(match(executor, from, Math.min(nodeCache.size(), from + QUERY_CHUNK_SIZE), matcher));
+	}
+
 	Set<T> set = new HashSet<>();
-	for(Root root : getRoots()) {
-	    for(String resource : root.getResources()) {
-		set.addAll(matcher.matches(root.getClassLoader(), nodeCache.get(resource)));
-	    }
+	for(FutureTask<Set<T>> task : tasks) {
+	    task.run();
+	    set.addAll(join(task));
 	}
 
+	queryCompleted(matcher.getClass().getName(), set.size(), start);
+	return Collections.unmodifiableSet(set);
+    }
+
+    private static final int QUERY_CHUNK_SIZE = 256;
+
+    private <T> FutureTask<Set<T>> match(final Executor executor, final int from, final int to,
+					 final ClassNodeMatcher<T> matcher) {
+	FutureTask<Set<T>> ret = new FutureTask<>(new Callable<Set<T>>() {
+		public Set<T> call() {
+		    return match(from, to, matcher);
+		} });
+	executor.execute(ret);
+	return ret;
+    }
+
+    private <T> Set<T> match(final String query, final ClassNodeMatcher<T> matcher) {
+	long start = System.nanoTime();
+	Set<T> set = match(0, nodeCache.size(), matcher);
+	queryCompleted(query, set.size(), start);
 	return Collections.unmodifiableSet(set);
     }
 
+    /**
+     * Matches the classes at positions <code>[from, to)</code> of the node cache
+     */
+    private <T> Set<T> match(final int from, final int to, final ClassNodeMatcher<T> matcher) {
+	final Set<T> ret = new HashSet<>();
+	nodeCache.visit(from, to, new NodeCache.Visitor() {
+		public void visit(Root root, ClassNode node) {
+		    ret.addAll(matcher.matches(root.getClassLoader(), node));
+		} });
+	return ret;
+    }
+
+    /**
+     * Runs a named finder, memoized by the finder name and the type it was passed
+     */
+    private <T> Set<T> findNodeMatches(final String finder, final Class<?> type, final ClassNodeMatcher<T> matcher) {
+	return memoize(QueryCache.key(finder, type), new Callable<Set<T>>() {
+		public Set<T> call() {
+		    return match(finder + "(" + type.getName() + ")", matcher);
+		} });
+    }
+
+    private <T> T memoize(final Object key, final Callable<T> compute) {
+	if(queryCache != null) {
+	    return queryCache.get(key, compute);
+	}
+
+	try {
+	    return compute.call();
+	}
+	catch(RuntimeException ex) {
+	    throw ex;
+	}
+	catch(Exception ex) {
+	    throw new RuntimeException(ex);
+	}
+    }
+
+    private void queryCompleted(final String query, final int results, final long start) {
+	getOptions().getListener().queryCompleted(query, results, System.nanoTime() - start);
+    }
+
     /**
      * Utility method used for interoperability with ASM
      */
@@ -152,7 +608,7 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Method</code>s found with the given annotation
      */
     public Set<Method> findMethodsAnnotatedWith(final Class<? extends Annotation> annotation) {
-	return findNodeMatches(new ClassNodeMatcher<Method>() {
+	return findNodeMatches("findMethodsAnnotatedWith", annotation, new ClassNodeMatcher<Method>() {
 
 		@SuppressWarnings("unchecked")
 		public boolean has(ClassNode node) {
@@ -197,7 +653,7 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Method</code>s found with parameters annotated with the specified annotation
      */
     public Set<Method> findMethodsWithParameterAnnotation(final Class<? extends Annotation> annotation) {
-	return findNodeMatches(new ClassNodeMatcher<Method>() {
+	return findNodeMatches("findMethodsWithParameterAnnotation", annotation, new ClassNodeMatcher<Method>() {
 
 		@SuppressWarnings("unchecked")
 		public boolean has(ClassNode node) {
@@ -218,7 +674,7 @@ public class ClassScanner extends ResourceScanner {
 		}
 
 		
-	        public Set<Method> matches(ClassLoader classLoader, ClassNode node) {
+		public Set<Method> matches(ClassLoader classLoader, ClassNode node) {
 		    if(has(node)) {
 			Set<Method> set = new HashSet<>();
 			try {
@@ -253,7 +709,7 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Field</code>s found with the given annotation
      */
     public Set<Field> findFieldsAnnotatedWith(final Class<? extends Annotation> annotation) {
-	return findNodeMatches(new ClassNodeMatcher<Field>() {
+	return findNodeMatches("findFieldsAnnotatedWith", annotation, new ClassNodeMatcher<Field>() {
 
 		@SuppressWarnings("unchecked")
 		public boolean has(ClassNode node) {
@@ -298,7 +754,7 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Class</code>s found with the given annotation
      */
     public Set<Class> findTypesAnnotatedWith(final Class<? extends Annotation> annotation) {
-	return findNodeMatches(new ClassNodeMatcher<Class>() {
+	return findNodeMatches("findTypesAnnotatedWith", annotation, new ClassNodeMatcher<Class>() {
 		@SuppressWarnings("unchecked")
 		public Set<Class> matches(ClassLoader classLoader, ClassNode node) {
 		    for(AnnotationNode annotationNode : safe((List<AnnotationNode>) node.visibleAnnotations)) {
@@ -323,7 +779,7 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Classes</code>s found with that are subtypes of <code>type</code>
      */
     public Set<Class> findDirectSubTypesOf(final Class<?> type) {
-	return findNodeMatches(new ClassNodeMatcher<Class>() {
+	return findNodeMatches("findDirectSubTypesOf", type, new ClassNodeMatcher<Class>() {
 		@SuppressWarnings("unchecked")
 		public Set<Class> matches(ClassLoader classLoader, ClassNode node) {
 		    if(type.getName().equals(cleanClass(node.superName))) {
@@ -348,6 +804,14 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Classes</code>s found with that are subtypes of <code>type</code>
      */
     public Set<Class> findSubTypesOf(final Class<?> type) {
+	return memoize(QueryCache.key("findSubTypesOf", type), new Callable<Set<Class>>() {
+		public Set<Class> call() {
+		    return subTypesOf(type);
+		} });
+    }
+
+    private Set<Class> subTypesOf(final Class<?> type) {
+	long start = System.nanoTime();
 	Set<Class> initial = findDirectSubTypesOf(type);
 	if(initial.isEmpty()) {
 	    return initial;
@@ -367,6 +831,7 @@ public class ClassScanner extends ResourceScanner {
 	    nextTestFor.clear();
 	}
 	
+	queryCompleted("findSubTypesOf(" + type.getName() + ")", accum.size(), start);
 	return Collections.unmodifiableSet(accum);
     }
 
@@ -376,7 +841,7 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Classes</code>s found with that directly implement <code>type</code>
      */
     public Set<Class> findDirectlyImplements(final Class<?> type) {
-	return findNodeMatches(new ClassNodeMatcher<Class>() {
+	return findNodeMatches("findDirectlyImplements", type, new ClassNodeMatcher<Class>() {
 		@SuppressWarnings("unchecked")
 		public Set<Class> matches(ClassLoader classLoader, ClassNode node) {
 		    for(String intf : safe((List<String>) node.interfaces)) {
@@ -399,6 +864,14 @@ public class ClassScanner extends ResourceScanner {
      * @return The <code>Classes</code>s found with that implement <code>type</code>, either directly or through one of their ancestors
      */
     public Set<Class> findImplements(final Class<?> type) {
+	return memoize(QueryCache.key("findImplements", type), new Callable<Set<Class>>() {
+		public Set<Class> call() {
+		    return implementsOf(type);
+		} });
+    }
+
+    private Set<Class> implementsOf(final Class<?> type) {
+	long start = System.nanoTime();
 	Set<Class> initial = findDirectlyImplements(type);
 	if(initial.isEmpty()) {
 	    return initial;
@@ -409,6 +882,7 @@ public class ClassScanner extends ResourceScanner {
 	    accum.addAll(findSubTypesOf(findFor));
 	}
 
+	queryCompleted("findImplements(" + type.getName() + ")", accum.size(), start);
 	return Collections.unmodifiableSet(accum);
     }
 }
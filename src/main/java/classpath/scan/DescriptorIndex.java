@@ -0,0 +1,129 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Entries aggregated from every copy of a line based descriptor resource, such as the provider
+ * lists of <code>META-INF/services</code> or <code>spring.factories</code> style files.  Built by
+ * {@link ResourceScanner#getServiceIndex()} and {@link ResourceScanner#getDescriptorIndex(String, LineParser)}.
+ *
+ * <p>Each key maps to its values in root order, then in the order they appear in each resource,
+ * with duplicates removed.  That is the order <code>ServiceLoader</code> finds providers in.
+ */
+public final class DescriptorIndex {
+
+    /**
+     * Parses <code>META-INF/services</code> provider files: the key is the service type named by
+     * the file, every line holds at most one provider, and anything after <code>#</code> is a comment.
+     */
+    public static final LineParser SERVICES = new LineParser() {
+	    public void parse(String resource, String line, Entries entries) {
+		int comment = line.indexOf('#');
+		String provider = ((comment == -1) ? line : line.substring(0, comment)).trim();
+		if(!provider.isEmpty()) {
+		    entries.add(resource.substring(resource.lastIndexOf('/') + 1), provider);
+		}
+	    } };
+
+    /**
+     * Parses properties style files mapping each key to a comma separated list of values, such
+     * as <code>spring.factories</code>.  Lines starting with <code>#</code> or <code>!</code> are
+     * comments and lines ending with a backslash continue on the next line.  Escapes other than
+     * line continuations are not supported.
+     */
+    public static final LineParser KEY_VALUES = new LineParser() {
+	    public void parse(String resource, String line, Entries entries) {
+		String trimmed = line.trim();
+		int separator = trimmed.indexOf('=');
+		if(trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("!") || separator == -1) {
+		    return;
+		}
+
+		String key = trimmed.substring(0, separator).trim();
+		for(String value : trimmed.substring(separator + 1).split(",")) {
+		    if(!value.trim().isEmpty()) {
+			entries.add(key, value.trim());
+		    }
+		}
+	    }
+
+	    @Override
+	    public boolean joinsContinuations() {
+		return true;
+	    } };
+
+    /**
+     * Receives the entries found by a <code>LineParser</code>
+     */
+    public static final class Entries {
+	private final Map<String,Set<String>> entries = new LinkedHashMap<>();
+
+	Entries() { }
+
+	/**
+	 * Adds a value to the values of <code>key</code>.
+	 */
+	public void add(final String key, final String value) {
+	    Set<String> values = entries.get(key);
+	    if(values == null) {
+		values = new LinkedHashSet<>();
+		entries.put(key, values);
+	    }
+
+	    values.add(value);
+	}
+    }
+
+    private final Map<String,List<String>> entries;
+
+    DescriptorIndex(final Entries entries) {
+	Map<String,List<String>> tmp = new LinkedHashMap<>();
+	for(Map.Entry<String,Set<String>> entry : entries.entries.entrySet()) {
+	    tmp.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+	}
+
+	this.entries = Collections.unmodifiableMap(tmp);
+    }
+
+    /**
+     * @param key The key to look up, such as the binary name of a service type
+     * @return The values of <code>key</code>, empty if there are none
+     */
+    public List<String> get(final String key) {
+	List<String> ret = entries.get(key);
+	return (ret == null) ? Collections.<String>emptyList() : ret;
+    }
+
+    /**
+     * @param service The service type
+     * @return The binary names of the providers of <code>service</code>, same as <code>get(service.getName())</code>
+     */
+    public List<String> getProviders(final Class<?> service) {
+	return get(service.getName());
+    }
+
+    /**
+     * @return Every key with at least one value
+     */
+    public Set<String> getKeys() {
+	return entries.keySet();
+    }
+
+    /**
+     * @return Every entry, keyed in the order the keys were first found
+     */
+    public Map<String,List<String>> asMap() {
+	return entries;
+    }
+
+    @Override
+    public String toString() {
+	return entries.toString();
+    }
+}
@@ -5,6 +5,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -34,6 +36,32 @@ public class DirectoryRoot extends Root {
 	this.directory = directory;
     }
     
+    @Override
+    public File getLocation() {
+	return directory;
+    }
+
+    @Override
+    long stamp(String resource) {
+	File file = new File(directory, resource);
+	return (file.lastModified() * 31) + file.length();
+    }
+
+    @Override
+    public long getSize(String resource) {
+	try {
+	    return Files.readAttributes(new File(directory, resource).toPath(), BasicFileAttributes.class).size();
+	}
+	catch(IOException ex) {
+	    return -1L;
+	}
+    }
+
+    @Override
+    public String toString() {
+	return directory.getPath();
+    }
+
     private static String cleanResource(final File baseDirectory, final File classFile) {
 	try {
 	    String ret = classFile.getCanonicalPath().replace(baseDirectory.getCanonicalPath(), "");
@@ -0,0 +1,23 @@
+package classpath.scan;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of <code>int</code> ids used while building indexes.  Internal to Classpath Scan.
+ */
+final class IdList {
+    int[] ids = new int[4];
+    int size;
+
+    void add(final int id) {
+	if(size == ids.length) {
+	    ids = Arrays.copyOf(ids, size * 2);
+	}
+
+	ids[size++] = id;
+    }
+
+    int[] toArray() {
+	return Arrays.copyOf(ids, size);
+    }
+}
@@ -0,0 +1,175 @@
+package classpath.scan;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * <code>Root</code> implementation for resources held in memory, such as classes generated at
+ * runtime.  Lets them be scanned without writing them to disk first, and gives benchmarks a
+ * root free of file system noise.  Register them with {@link #source(ClassLoader, Map)}.
+ *
+ * <p>The contents of the buffers must not change once the root has been created.  Buffers
+ * are never modified or consumed, each read works on a duplicate.
+ */
+public class InMemoryRoot extends Root {
+
+    private final SortedMap<String,ByteBuffer> contents;
+
+    public <T> T withStream(String resource, ProcessInputStream<T> processor) {
+	ByteBuffer buffer = contents.get(resource);
+	if(buffer == null) {
+	    throw new RuntimeException(new IOException(resource + " not found in memory"));
+	}
+
+	try(InputStream istream = new ByteBufferInputStream(buffer.duplicate())) {
+	    return processor.process(istream);
+	}
+	catch(IOException ex) {
+	    throw new RuntimeException(ex);
+	}
+    }
+
+    public InMemoryRoot(final ClassLoader classLoader, final SortedMap<String,ByteBuffer> contents) {
+	super(classLoader, new TreeSet<>(contents.keySet()));
+	this.contents = Collections.unmodifiableSortedMap(new TreeMap<>(contents));
+    }
+
+    @Override
+    public byte[] readBytes(String resource) {
+	ByteBuffer buffer = contents.get(resource);
+	if(buffer == null) {
+	    return super.readBytes(resource);
+	}
+
+	byte[] ret = new byte[buffer.remaining()];
+	buffer.duplicate().get(ret);
+	return ret;
+    }
+
+    @Override
+    public long getSize(String resource) {
+	ByteBuffer buffer = contents.get(resource);
+	return (buffer == null) ? -1L : buffer.remaining();
+    }
+
+    @Override
+    public long getCrc(String resource) {
+	//already in memory, so the checksum is cheap enough to compute on demand
+	ByteBuffer buffer = contents.get(resource);
+	if(buffer == null) {
+	    return -1L;
+	}
+
+	CRC32 crc = new CRC32();
+	crc.update(buffer.duplicate());
+	return crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+	return "memory[" + getResources().size() + " resources]";
+    }
+
+    /**
+     * Wraps byte arrays in buffers, without copying them.
+     *
+     * @param contents The contents of each resource by resource name
+     * @return The same contents as buffers
+     */
+    public static SortedMap<String,ByteBuffer> wrap(final Map<String,byte[]> contents) {
+	SortedMap<String,ByteBuffer> ret = new TreeMap<>();
+	for(Map.Entry<String,byte[]> entry : contents.entrySet()) {
+	    ret.put(entry.getKey(), ByteBuffer.wrap(entry.getValue()));
+	}
+
+	return ret;
+    }
+
+    public static InMemoryRoot factory(final ClassLoader classLoader, final Map<String,ByteBuffer> contents,
+				       final List<String> prefixes, final List<Pattern> patterns) {
+	SortedMap<String,ByteBuffer> matching = new TreeMap<>();
+	for(Map.Entry<String,ByteBuffer> entry : contents.entrySet()) {
+	    if(matchesPrefixes(entry.getKey(), prefixes) && matchesAll(entry.getKey(), patterns)) {
+		matching.put(entry.getKey(), entry.getValue());
+	    }
+	}
+
+	if(!matching.isEmpty()) {
+	    return new InMemoryRoot(classLoader, matching);
+	}
+	else {
+	    return null;
+	}
+    }
+
+    /**
+     * Returns a <code>RootSource</code> contributing a single in memory root, holding the
+     * resources of <code>contents</code> which match the prefixes and patterns of the scanner.
+     *
+     * @param classLoader The classloader the resources are loaded by, used by queries which need
+     * the <code>Class</code> of a scanned class.  May be <code>null</code> if no such query is made.
+     * @param contents The contents of each resource by resource name, such as <code>com/foo/Bar.class</code>
+     * @return The source
+     */
+    public static RootSource source(final ClassLoader classLoader, final Map<String,ByteBuffer> contents) {
+	final SortedMap<String,ByteBuffer> copy = new TreeMap<>(contents);
+	return new RootSource() {
+	    public List<Root> findRoots(ClassLoader scanned, List<String> prefixes, List<Pattern> patterns, ScanOptions options) {
+		long start = System.nanoTime();
+		Root root = factory(classLoader, copy, prefixes, patterns);
+		if(root == null) {
+		    return Collections.<Root>emptyList();
+		}
+
+		options.getListener().rootEnumerated(root, System.nanoTime() - start);
+		return Collections.singletonList(root);
+	    }
+
+	    @Override
+	    public String toString() {
+		return "memory[" + copy.size() + " resources]";
+	    } };
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer buffer;
+
+	ByteBufferInputStream(final ByteBuffer buffer) {
+	    this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+	    return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(final byte[] bytes, final int offset, final int length) {
+	    if(length == 0) {
+		return 0;
+	    }
+
+	    if(!buffer.hasRemaining()) {
+		return -1;
+	    }
+
+	    int ret = Math.min(length, buffer.remaining());
+	    buffer.get(bytes, offset, ret);
+	    return ret;
+	}
+
+	@Override
+	public int available() {
+	    return buffer.remaining();
+	}
+    }
+}
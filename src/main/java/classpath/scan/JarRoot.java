@@ -35,6 +35,29 @@ public class JarRoot extends Root {
 	this.jar = jar;
     }
     
+    @Override
+    public File getLocation() {
+	return new File(jar.getName());
+    }
+
+    @Override
+    public long getSize(String resource) {
+	JarEntry entry = jar.getJarEntry(resource);
+	return (entry == null) ? -1L : entry.getSize();
+    }
+
+    @Override
+    public long getCrc(String resource) {
+	//comes from the central directory, the entry is never inflated
+	JarEntry entry = jar.getJarEntry(resource);
+	return (entry == null) ? -1L : entry.getCrc();
+    }
+
+    @Override
+    public String toString() {
+	return jar.getName();
+    }
+
     private static boolean shouldProcess(final JarFile jar, final List<String> prefixes) {
 	if(prefixes == null || prefixes.isEmpty()) {
 	    return true;
@@ -50,30 +73,37 @@ public class JarRoot extends Root {
 	return false;
     }
 
-    private static boolean matchesPrefixes(final String resourceName, final List<String> prefixes) {
-	if(prefixes == null || prefixes.isEmpty()) {
-	    return true;
-	}
+    private static String[] entryNames(final JarFile jar, final RootCache.Entry cached) {
+	String[] ret = (cached == null) ? null : cached.getNames();
+	if(ret == null) {
+	    List<String> tmp = new ArrayList<>();
+	    for(Enumeration<JarEntry> iter = jar.entries(); iter.hasMoreElements(); ) {
+		tmp.add(iter.nextElement().getName());
+	    }
 
-	for(String prefix : prefixes) {
-	    if(resourceName.startsWith(prefix)) {
-		return true;
+	    ret = tmp.toArray(new String[tmp.size()]);
+	    if(cached != null) {
+		cached.setNames(ret);
 	    }
 	}
-	
-	return false;
+
+	return ret;
     }
 
     public static JarRoot factory(final ClassLoader classLoader, final File jarFile, 
 				     final List<String> prefixes, final List<Pattern> patterns) {
+	return factory(classLoader, jarFile, prefixes, patterns, null);
+    }
+
+    static JarRoot factory(final ClassLoader classLoader, final File jarFile, final List<String> prefixes,
+			   final List<Pattern> patterns, final RootCache cache) {
 	try {
 	    JarFile jar = new JarFile(jarFile);
 	    SortedSet<String> resources = new TreeSet<>();
 	    
 	    if(shouldProcess(jar, prefixes)) {
-		for(Enumeration<JarEntry> iter = jar.entries(); iter.hasMoreElements(); ) {
-		    JarEntry entry = iter.nextElement();
-		    String resourceName = entry.getName();
+		RootCache.Entry cached = (cache == null) ? null : cache.entry(jarFile);
+		for(String resourceName : entryNames(jar, cached)) {
 		    if(matchesPrefixes(resourceName, prefixes) && matchesAll(resourceName, patterns)) {
 			resources.add(resourceName);
 		    }
@@ -0,0 +1,25 @@
+package classpath.scan;
+
+/**
+ * Parses line based descriptor resources, such as <code>META-INF/services</code> provider
+ * files, into the entries of a {@link DescriptorIndex}.  See
+ * {@link ResourceScanner#getDescriptorIndex(String, LineParser)}, which caches an index per
+ * prefix and parser, so parsers should be shared constants or implement <code>equals</code>.
+ */
+public interface LineParser {
+
+    /**
+     * @param resource The name of the resource being parsed
+     * @param line A line of the resource, as read, without its line terminator
+     * @param entries Receives the entries found on the line, if any
+     */
+    public void parse(String resource, String line, DescriptorIndex.Entries entries);
+
+    /**
+     * @return Whether or not lines ending with a backslash continue on the next line, as in properties files.
+     * If so, continued lines are joined before being passed to <code>parse</code>.
+     */
+    default boolean joinsContinuations() {
+	return false;
+    }
+}
@@ -0,0 +1,91 @@
+package classpath.scan;
+
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * Describes a method found by a {@link MethodIndex} query, without loading its class.
+ * Type names are written the way <code>Class.getName()</code> writes them for classes,
+ * except for arrays, which are written as in source code, for example
+ * <code>java.lang.String[]</code>, and primitives, which are written as their keyword.
+ */
+public final class MethodDescriptor {
+
+    private final String owner;
+    private final String name;
+    private final String descriptor;
+    private final int access;
+    private final String returnType;
+    private final List<String> parameterTypes;
+
+    MethodDescriptor(final String owner, final String name, final String descriptor, final int access,
+		     final String returnType, final List<String> parameterTypes) {
+	this.owner = owner;
+	this.name = name;
+	this.descriptor = descriptor;
+	this.access = access;
+	this.returnType = returnType;
+	this.parameterTypes = parameterTypes;
+    }
+
+    /**
+     * @return The binary name of the class declaring the method
+     */
+    public String getOwner() { return owner; }
+
+    /**
+     * @return The name of the method
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return The JVM descriptor of the method, such as <code>(Ljava/lang/String;I)V</code>
+     */
+    public String getDescriptor() { return descriptor; }
+
+    /**
+     * @return The access flags of the method, which can be tested with <code>java.lang.reflect.Modifier</code>
+     */
+    public int getAccess() { return access; }
+
+    /**
+     * @return The name of the return type, <code>void</code> for methods not returning anything
+     */
+    public String getReturnType() { return returnType; }
+
+    /**
+     * @return The names of the parameter types, in order
+     */
+    public List<String> getParameterTypes() { return parameterTypes; }
+
+    @Override
+    public boolean equals(Object obj) {
+	if(!(obj instanceof MethodDescriptor)) {
+	    return false;
+	}
+
+	MethodDescriptor that = (MethodDescriptor) obj;
+	return owner.equals(that.owner) && name.equals(that.name) && descriptor.equals(that.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+	return (owner.hashCode() * 961) + (name.hashCode() * 31) + descriptor.hashCode();
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder();
+	String modifiers = Modifier.toString(access & Modifier.methodModifiers());
+	if(!modifiers.isEmpty()) {
+	    sb.append(modifiers).append(' ');
+	}
+
+	sb.append(returnType).append(' ').append(owner).append('.').append(name).append('(');
+	for(int i = 0; i < parameterTypes.size(); ++i) {
+	    sb.append((i == 0) ? "" : ",").append(parameterTypes.get(i));
+	}
+
+	return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,295 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import classpath.scan.jarjar.Opcodes;
+import classpath.scan.jarjar.Type;
+import classpath.scan.jarjar.tree.MethodNode;
+
+/**
+ * Index of the signatures of the methods declared by the scanned classes, for queries such as
+ * all methods returning a given type or all public static methods taking given parameters.
+ * Enable it with {@link ScanOptions#withMethodIndex(boolean)}, retrieve it with
+ * {@link ClassScanner#getMethodIndex()}, and query it with a {@link MethodPattern}.
+ *
+ * <p>Each signature is decomposed into type ids when the class is scanned.  Methods are listed
+ * by return type, by parameter type, by number of parameters, and by name, so a query only
+ * looks at the methods in the shortest list matching one of its criteria.  No class is loaded.
+ *
+ * <p>Constructors, static initializers, and synthetic methods, including bridge methods,
+ * are not indexed.
+ */
+public final class MethodIndex {
+
+    private static final int[] NONE = new int[0];
+
+    //type id -> type name
+    private String[] types;
+    private Map<String,Integer> typeIds;
+
+    //method id -> method columns
+    private String[] owners;
+    private String[] names;
+    private String[] descriptors;
+    private int[] access;
+    private int[] returns;
+    private int[][] parameters;
+
+    //postings, method ids in ascending order
+    private int[][] byReturn;
+    private int[][] byParameter;
+    private int[][] byArity;
+    private Map<String,int[]> byName;
+
+    //only used while the scanner is being constructed, see freeze
+    private Building building = new Building();
+
+    private static final class Building {
+	final List<String> types = new ArrayList<>();
+	final Map<String,Integer> typeIds = new HashMap<>();
+	final List<String> owners = new ArrayList<>();
+	final List<String> names = new ArrayList<>();
+	final List<String> descriptors = new ArrayList<>();
+	final IdList access = new IdList();
+	final IdList returns = new IdList();
+	final List<int[]> parameters = new ArrayList<>();
+
+	int typeId(final String type) {
+	    Integer ret = typeIds.get(type);
+	    if(ret == null) {
+		ret = types.size();
+		types.add(type);
+		typeIds.put(type, ret);
+	    }
+
+	    return ret;
+	}
+    }
+
+    MethodIndex() { }
+
+    /**
+     * Adds the methods of a class.  Only called while the scanner is being constructed,
+     * once per class, so the methods of a shadowed copy of a class are never indexed.
+     */
+    @SuppressWarnings("unchecked")
+    void add(final ParsedClass pc) {
+	String owner = ClassScanner.cleanClass(pc.node.name);
+	for(MethodNode methodNode : ClassScanner.safe((List<MethodNode>) pc.node.methods)) {
+	    if(methodNode.name.charAt(0) == '<' || (methodNode.access & Opcodes.ACC_SYNTHETIC) != 0) {
+		continue;
+	    }
+
+	    Type[] argumentTypes = Type.getArgumentTypes(methodNode.desc);
+	    int[] ids = new int[argumentTypes.length];
+	    for(int i = 0; i < ids.length; ++i) {
+		ids[i] = building.typeId(argumentTypes[i].getClassName());
+	    }
+
+	    building.owners.add(owner);
+	    building.names.add(methodNode.name);
+	    building.descriptors.add(methodNode.desc);
+	    building.access.add(methodNode.access);
+	    building.returns.add(building.typeId(Type.getReturnType(methodNode.desc).getClassName()));
+	    building.parameters.add(ids);
+	}
+    }
+
+    /**
+     * Compacts the index once every class has been added.
+     */
+    void freeze() {
+	types = building.types.toArray(new String[building.types.size()]);
+	typeIds = building.typeIds;
+	owners = building.owners.toArray(new String[building.owners.size()]);
+	names = building.names.toArray(new String[building.names.size()]);
+	descriptors = building.descriptors.toArray(new String[building.descriptors.size()]);
+	access = building.access.toArray();
+	returns = building.returns.toArray();
+	parameters = building.parameters.toArray(new int[building.parameters.size()][]);
+
+	IdList[] returnLists = new IdList[types.length];
+	IdList[] parameterLists = new IdList[types.length];
+	List<IdList> arityLists = new ArrayList<>();
+	Map<String,IdList> nameLists = new HashMap<>();
+	for(int id = 0; id < owners.length; ++id) {
+	    list(returnLists, returns[id]).add(id);
+	    for(int i = 0; i < parameters[id].length; ++i) {
+		if(indexOf(parameters[id], parameters[id][i]) == i) {
+		    //only once per method, even when several parameters have the type
+		    list(parameterLists, parameters[id][i]).add(id);
+		}
+	    }
+
+	    while(arityLists.size() <= parameters[id].length) {
+		arityLists.add(new IdList());
+	    }
+
+	    arityLists.get(parameters[id].length).add(id);
+	    IdList ids = nameLists.get(names[id]);
+	    if(ids == null) {
+		ids = new IdList();
+		nameLists.put(names[id], ids);
+	    }
+
+	    ids.add(id);
+	}
+
+	byReturn = toArrays(returnLists);
+	byParameter = toArrays(parameterLists);
+	byArity = toArrays(arityLists.toArray(new IdList[arityLists.size()]));
+	byName = new HashMap<>(nameLists.size() * 4 / 3 + 1);
+	for(Map.Entry<String,IdList> entry : nameLists.entrySet()) {
+	    byName.put(entry.getKey(), entry.getValue().toArray());
+	}
+
+	building = null;
+    }
+
+    private static IdList list(final IdList[] lists, final int index) {
+	if(lists[index] == null) {
+	    lists[index] = new IdList();
+	}
+
+	return lists[index];
+    }
+
+    private static int[][] toArrays(final IdList[] lists) {
+	int[][] ret = new int[lists.length][];
+	for(int i = 0; i < lists.length; ++i) {
+	    ret[i] = (lists[i] == null) ? NONE : lists[i].toArray();
+	}
+
+	return ret;
+    }
+
+    private static int indexOf(final int[] ids, final int id) {
+	for(int i = 0; i < ids.length; ++i) {
+	    if(ids[i] == id) {
+		return i;
+	    }
+	}
+
+	return -1;
+    }
+
+    /**
+     * @return The posting of a type, <code>null</code> if no method uses the type
+     */
+    private static int[] posting(final int[][] postings, final Integer typeId) {
+	return (typeId == null) ? null : postings[typeId];
+    }
+
+    private static int[] shortest(final int[] current, final int[] candidate) {
+	return (current == null || candidate.length < current.length) ? candidate : current;
+    }
+
+    /**
+     * Finds every indexed method matching <code>pattern</code>.
+     *
+     * @param pattern The signature pattern to match
+     * @return The matching methods, in the order they were scanned
+     */
+    public List<MethodDescriptor> find(final MethodPattern pattern) {
+	//pick the shortest list any criterion allows, an unknown type means nothing can match
+	int[] candidates = null;
+	if(pattern.getReturnType() != null) {
+	    int[] posting = posting(byReturn, typeIds.get(pattern.getReturnType()));
+	    candidates = shortest(candidates, (posting == null) ? NONE : posting);
+	}
+
+	List<String> exact = pattern.getParameterTypes();
+	List<String> some = new ArrayList<>(pattern.getSomeParameterTypes());
+	if(exact != null) {
+	    candidates = shortest(candidates, (exact.size() < byArity.length) ? byArity[exact.size()] : NONE);
+	    some.addAll(exact);
+	}
+
+	int[] someIds = new int[some.size()];
+	for(int i = 0; i < someIds.length; ++i) {
+	    Integer typeId = typeIds.get(some.get(i));
+	    int[] posting = posting(byParameter, typeId);
+	    candidates = shortest(candidates, (posting == null) ? NONE : posting);
+	    someIds[i] = (typeId == null) ? -1 : typeId;
+	}
+
+	if(pattern.getName() != null) {
+	    int[] posting = byName.get(pattern.getName());
+	    candidates = shortest(candidates, (posting == null) ? NONE : posting);
+	}
+
+	List<MethodDescriptor> ret = new ArrayList<>();
+	if(candidates == null) {
+	    for(int id = 0; id < owners.length; ++id) {
+		if(matches(pattern, someIds, id)) {
+		    ret.add(descriptor(id));
+		}
+	    }
+	}
+	else {
+	    for(int id : candidates) {
+		if(matches(pattern, someIds, id)) {
+		    ret.add(descriptor(id));
+		}
+	    }
+	}
+
+	return Collections.unmodifiableList(ret);
+    }
+
+    private boolean matches(final MethodPattern pattern, final int[] someIds, final int id) {
+	if((access[id] & pattern.getModifiers()) != pattern.getModifiers()) {
+	    return false;
+	}
+
+	if(pattern.getName() != null && !pattern.getName().equals(names[id])) {
+	    return false;
+	}
+
+	if(pattern.getReturnType() != null && !pattern.getReturnType().equals(types[returns[id]])) {
+	    return false;
+	}
+
+	List<String> exact = pattern.getParameterTypes();
+	if(exact != null) {
+	    if(exact.size() != parameters[id].length) {
+		return false;
+	    }
+
+	    for(int i = 0; i < exact.size(); ++i) {
+		if(!exact.get(i).equals(types[parameters[id][i]])) {
+		    return false;
+		}
+	    }
+	}
+
+	for(int someId : someIds) {
+	    if(indexOf(parameters[id], someId) == -1) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    private MethodDescriptor descriptor(final int id) {
+	String[] parameterTypes = new String[parameters[id].length];
+	for(int i = 0; i < parameterTypes.length; ++i) {
+	    parameterTypes[i] = types[parameters[id][i]];
+	}
+
+	return new MethodDescriptor(owners[id], names[id], descriptors[id], access[id], types[returns[id]],
+				    Collections.unmodifiableList(Arrays.asList(parameterTypes)));
+    }
+
+    /**
+     * @return The number of indexed methods
+     */
+    public int size() {
+	return owners.length;
+    }
+}
@@ -0,0 +1,155 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import classpath.scan.jarjar.Type;
+
+/**
+ * Immutable pattern of method signatures used to query a {@link MethodIndex}.  Start from
+ * {@link #ANY} and narrow it down with the <code>with</code> methods, every criterion must
+ * match.  For example, all public static methods taking an <code>Order</code> and a
+ * <code>String</code> and returning a <code>Response</code>:
+ *
+ * <p><code>MethodPattern.ANY.withModifiers(Modifier.PUBLIC | Modifier.STATIC)
+ * .withReturnType(Response.class).withParameterTypes(Order.class, String.class)</code>
+ *
+ * <p>Type names are written as in {@link MethodDescriptor}, passing a <code>Class</code>
+ * converts it to that form.
+ */
+public final class MethodPattern {
+
+    /**
+     * Matches every method
+     */
+    public static final MethodPattern ANY = new MethodPattern();
+
+    private final String name;
+    private final String returnType;
+    private final List<String> parameterTypes;
+    private final List<String> someParameterTypes;
+    private final int modifiers;
+
+    private MethodPattern() {
+	this(null, null, null, Collections.<String>emptyList(), 0);
+    }
+
+    private MethodPattern(final String name, final String returnType, final List<String> parameterTypes,
+			  final List<String> someParameterTypes, final int modifiers) {
+	this.name = name;
+	this.returnType = returnType;
+	this.parameterTypes = parameterTypes;
+	this.someParameterTypes = someParameterTypes;
+	this.modifiers = modifiers;
+    }
+
+    static String typeName(final Class<?> type) {
+	return Type.getType(type).getClassName();
+    }
+
+    private static List<String> typeNames(final Class<?>[] types) {
+	List<String> ret = new ArrayList<>();
+	for(Class<?> type : types) {
+	    ret.add(typeName(type));
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The name methods must have, or <code>null</code> for any name
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return The return type methods must have, or <code>null</code> for any return type
+     */
+    public String getReturnType() { return returnType; }
+
+    /**
+     * @return The exact parameter types methods must have, or <code>null</code> for any parameters
+     */
+    public List<String> getParameterTypes() { return parameterTypes; }
+
+    /**
+     * @return The types methods must take as one of their parameters, in any position
+     */
+    public List<String> getSomeParameterTypes() { return someParameterTypes; }
+
+    /**
+     * @return The modifiers methods must all have
+     */
+    public int getModifiers() { return modifiers; }
+
+    /**
+     * @param name The name methods must have
+     * @return A new pattern also matching the name
+     */
+    public MethodPattern withName(final String name) {
+	return new MethodPattern(name, returnType, parameterTypes, someParameterTypes, modifiers);
+    }
+
+    /**
+     * @param returnType The name of the return type methods must have, <code>void</code> for methods returning nothing
+     * @return A new pattern also matching the return type
+     */
+    public MethodPattern withReturnType(final String returnType) {
+	return new MethodPattern(name, returnType, parameterTypes, someParameterTypes, modifiers);
+    }
+
+    /**
+     * @see #withReturnType(String)
+     */
+    public MethodPattern withReturnType(final Class<?> returnType) {
+	return withReturnType(typeName(returnType));
+    }
+
+    /**
+     * @param parameterTypes The names of the exact parameter types methods must have, in order
+     * @return A new pattern also matching the parameters
+     */
+    public MethodPattern withParameterTypes(final String... parameterTypes) {
+	return new MethodPattern(name, returnType, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(parameterTypes))),
+				 someParameterTypes, modifiers);
+    }
+
+    /**
+     * @see #withParameterTypes(String...)
+     */
+    public MethodPattern withParameterTypes(final Class<?>... parameterTypes) {
+	List<String> names = typeNames(parameterTypes);
+	return withParameterTypes(names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * @param parameterType The name of a type methods must take as one of their parameters
+     * @return A new pattern also matching the parameter
+     */
+    public MethodPattern withParameterType(final String parameterType) {
+	List<String> tmp = new ArrayList<>(someParameterTypes);
+	tmp.add(parameterType);
+	return new MethodPattern(name, returnType, parameterTypes, Collections.unmodifiableList(tmp), modifiers);
+    }
+
+    /**
+     * @see #withParameterType(String)
+     */
+    public MethodPattern withParameterType(final Class<?> parameterType) {
+	return withParameterType(typeName(parameterType));
+    }
+
+    /**
+     * @param modifiers The <code>java.lang.reflect.Modifier</code> flags methods must all have
+     * @return A new pattern also matching the modifiers
+     */
+    public MethodPattern withModifiers(final int modifiers) {
+	return new MethodPattern(name, returnType, parameterTypes, someParameterTypes, this.modifiers | modifiers);
+    }
+
+    @Override
+    public String toString() {
+	return String.format("MethodPattern(name=%s, returnType=%s, parameterTypes=%s, someParameterTypes=%s, modifiers=%d)",
+			     name, returnType, parameterTypes, someParameterTypes, modifiers);
+    }
+}
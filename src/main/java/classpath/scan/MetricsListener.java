@@ -0,0 +1,118 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>ScanListener</code> that accumulates scan and query metrics.  Register an
+ * instance through {@link ScanOptions#withListener(ScanListener)} and call
+ * {@link #getMetrics()} whenever a snapshot is needed.  A single instance may be
+ * shared by several scanners, in which case the metrics cover all of them.
+ *
+ * <p>Each root has its own counters, so scanners sharing a listener only add up the metrics
+ * of equal roots, those holding the same resources of the same classloader.  Roots are only
+ * referenced weakly, which keeps a long lived listener from keeping the roots it has seen,
+ * and their open jar files, reachable.  The counters of a root stay in the metrics after the
+ * root is collected.
+ */
+public class MetricsListener implements ScanListener {
+
+    private static final class RootCounters {
+	final String root;
+	final int resources;
+	final AtomicLong enumerationNanos = new AtomicLong();
+	final AtomicLong bytesRead = new AtomicLong();
+	final AtomicLong classesParsed = new AtomicLong();
+	final AtomicLong parseNanos = new AtomicLong();
+	final AtomicLong retainedBytes = new AtomicLong();
+
+	RootCounters(final Root root) {
+	    this.root = root.toString();
+	    this.resources = root.getResources().size();
+	    this.retainedBytes.set(root.estimateRetainedSize());
+	}
+    }
+
+    private static final class QueryCounters {
+	final AtomicLong count = new AtomicLong();
+	final AtomicLong totalNanos = new AtomicLong();
+	final AtomicLong maxNanos = new AtomicLong();
+    }
+
+    //counters never reference their root, so the keys can be collected
+    private final Map<Root,RootCounters> roots = new WeakHashMap<>();
+    private final List<RootCounters> order = new ArrayList<>();
+    private final ConcurrentMap<String,QueryCounters> queries = new ConcurrentHashMap<>();
+
+    private RootCounters counters(final Root root) {
+	synchronized(roots) {
+	    RootCounters ret = roots.get(root);
+	    if(ret == null) {
+		ret = new RootCounters(root);
+		roots.put(root, ret);
+		order.add(ret);
+	    }
+
+	    return ret;
+	}
+    }
+
+    public void rootEnumerated(Root root, long nanos) {
+	counters(root).enumerationNanos.addAndGet(nanos);
+    }
+
+    public void resourceRead(Root root, String resource, long bytes) {
+	counters(root).bytesRead.addAndGet(bytes);
+    }
+
+    public void classParsed(Root root, String resource, long nanos, long retainedBytes) {
+	RootCounters rc = counters(root);
+	rc.classesParsed.incrementAndGet();
+	rc.parseNanos.addAndGet(nanos);
+	rc.retainedBytes.addAndGet(retainedBytes);
+    }
+
+    public void queryCompleted(String query, int results, long nanos) {
+	QueryCounters qc = queries.get(query);
+	if(qc == null) {
+	    QueryCounters tmp = new QueryCounters();
+	    qc = queries.putIfAbsent(query, tmp);
+	    if(qc == null) {
+		qc = tmp;
+	    }
+	}
+
+	qc.count.incrementAndGet();
+	qc.totalNanos.addAndGet(nanos);
+	long max;
+	while((max = qc.maxNanos.get()) < nanos && !qc.maxNanos.compareAndSet(max, nanos)) { }
+    }
+
+    /**
+     * @return A snapshot of the metrics collected so far
+     */
+    public ScanMetrics getMetrics() {
+	List<ScanMetrics.RootMetrics> rootMetrics = new ArrayList<>();
+	synchronized(roots) {
+	    for(RootCounters rc : order) {
+		rootMetrics.add(new ScanMetrics.RootMetrics(rc.root, rc.resources, rc.enumerationNanos.get(), rc.bytesRead.get(),
+							    (int) rc.classesParsed.get(), rc.parseNanos.get(), rc.retainedBytes.get()));
+	    }
+	}
+
+	Map<String,ScanMetrics.QueryMetrics> queryMetrics = new LinkedHashMap<>();
+	for(Map.Entry<String,QueryCounters> entry : queries.entrySet()) {
+	    QueryCounters qc = entry.getValue();
+	    queryMetrics.put(entry.getKey(), new ScanMetrics.QueryMetrics(entry.getKey(), qc.count.get(),
+									  qc.totalNanos.get(), qc.maxNanos.get()));
+	}
+
+	return new ScanMetrics(rootMetrics, queryMetrics);
+    }
+}
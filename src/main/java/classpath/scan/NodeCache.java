@@ -0,0 +1,246 @@
+package classpath.scan;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import classpath.scan.jarjar.tree.ClassNode;
+
+/**
+ * Holds the <code>ClassNode</code>s of a <code>ClassScanner</code>.  Internal to Classpath Scan.
+ *
+ * <p>There are three modes, selected through <code>ScanOptions</code>:
+ * <ul>
+ * <li>Unbounded, the default, keeps every node for the life of the scanner</li>
+ * <li>Bounded keeps the most recently used nodes, up to a maximum entry count and/or an
+ * estimated byte budget</li>
+ * <li>Soft holds every node through a <code>SoftReference</code> and lets the garbage collector decide</li>
+ * </ul>
+ * In the bounded and soft modes a node that is no longer cached is parsed again from its root.
+ *
+ * <p>Every class is also kept in an array, in the order it was added, together with the root
+ * it came from.  Queries walk those arrays, so they neither decode resource names nor hash
+ * them, and in the unbounded mode the nodes are held in an array as well.
+ */
+final class NodeCache {
+
+    /**
+     * Parses a class resource again after its node was evicted
+     */
+    interface Loader {
+	ClassNode load(Root root, String resource);
+    }
+
+    /**
+     * Receives the cached classes, see {@link NodeCache#visit(int, int, Visitor)}
+     */
+    interface Visitor {
+	void visit(Root root, ClassNode node);
+    }
+
+    private static final class Sized {
+	final ClassNode node;
+	final long bytes;
+
+	Sized(final ClassNode node, final long bytes) {
+	    this.node = node;
+	    this.bytes = bytes;
+	}
+    }
+
+    private static final class SoftNode extends SoftReference<ClassNode> {
+	final String resource;
+
+	SoftNode(final String resource, final ClassNode node, final ReferenceQueue<ClassNode> queue) {
+	    super(node, queue);
+	    this.resource = resource;
+	}
+    }
+
+    private final Loader loader;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    //every class in the order it was added, filled while the scanner is constructed, see freeze
+    private List<String> addedResources = new ArrayList<>();
+    private List<Root> addedRoots = new ArrayList<>();
+    private List<ClassNode> addedNodes;
+    private String[] resources;
+    private Root[] roots;
+
+    //exactly one of these is used, depending on the mode
+    private ClassNode[] unbounded;
+    private final LinkedHashMap<String,Sized> bounded;
+    private final ConcurrentMap<String,SoftNode> soft;
+    private final ReferenceQueue<ClassNode> queue;
+
+    private long bytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    NodeCache(final ScanOptions options, final Loader loader) {
+	this.loader = loader;
+	this.maxEntries = options.getNodeCacheMaxEntries();
+	this.maxBytes = options.getNodeCacheMaxBytes();
+	if(options.isSoftNodeCache()) {
+	    this.bounded = null;
+	    this.soft = new ConcurrentHashMap<>();
+	    this.queue = new ReferenceQueue<>();
+	}
+	else if(maxEntries > 0 || maxBytes > 0) {
+	    this.bounded = new LinkedHashMap<>(16, 0.75f, true);
+	    this.soft = null;
+	    this.queue = null;
+	}
+	else {
+	    this.addedNodes = new ArrayList<>();
+	    this.bounded = null;
+	    this.soft = null;
+	    this.queue = null;
+	}
+    }
+
+    /**
+     * Adds a class.  Only called while the scanner is being constructed, once per class.
+     */
+    void put(final Root root, final String resource, final ClassNode node) {
+	addedResources.add(resource);
+	addedRoots.add(root);
+	if(addedNodes != null) {
+	    addedNodes.add(node);
+	}
+	else if(bounded != null) {
+	    putBounded(resource, node);
+	}
+	else {
+	    putSoft(resource, node);
+	}
+    }
+
+    /**
+     * Compacts the cache once every class has been added.
+     */
+    void freeze() {
+	resources = addedResources.toArray(new String[addedResources.size()]);
+	roots = addedRoots.toArray(new Root[addedRoots.size()]);
+	if(addedNodes != null) {
+	    unbounded = addedNodes.toArray(new ClassNode[addedNodes.size()]);
+	}
+
+	addedResources = null;
+	addedRoots = null;
+	addedNodes = null;
+    }
+
+    /**
+     * @return The number of classes, cached or not
+     */
+    int size() {
+	return resources.length;
+    }
+
+    /**
+     * Passes the classes at positions <code>[from, to)</code> to <code>visitor</code>, in the order they were added.
+     */
+    void visit(final int from, final int to, final Visitor visitor) {
+	for(int i = from; i < to; ++i) {
+	    visitor.visit(roots[i], (unbounded != null) ? unbounded[i] : get(i));
+	}
+    }
+
+    private synchronized void putBounded(final String resource, final ClassNode node) {
+	long size = (maxBytes > 0) ? ClassScanner.estimateRetainedSize(node) : 0L;
+	Sized old = bounded.put(resource, new Sized(node, size));
+	if(old != null) {
+	    bytes -= old.bytes;
+	}
+
+	bytes += size;
+	Iterator<Sized> iter = bounded.values().iterator();
+	while(iter.hasNext() && bounded.size() > 1 &&
+	      ((maxEntries > 0 && bounded.size() > maxEntries) || (maxBytes > 0 && bytes > maxBytes))) {
+	    bytes -= iter.next().bytes;
+	    iter.remove();
+	    evictions.incrementAndGet();
+	}
+    }
+
+    private void putSoft(final String resource, final ClassNode node) {
+	expunge();
+	soft.put(resource, new SoftNode(resource, node, queue));
+    }
+
+    private void expunge() {
+	SoftNode cleared;
+	while((cleared = (SoftNode) queue.poll()) != null) {
+	    if(soft.remove(cleared.resource, cleared)) {
+		evictions.incrementAndGet();
+	    }
+	}
+    }
+
+    /**
+     * Returns the node of the class at <code>index</code>, parsing it again if it was evicted.
+     */
+    private ClassNode get(final int index) {
+	String resource = resources[index];
+	ClassNode ret;
+	if(bounded != null) {
+	    synchronized(this) {
+		Sized sized = bounded.get(resource);
+		ret = (sized == null) ? null : sized.node;
+	    }
+	}
+	else {
+	    expunge();
+	    SoftNode ref = soft.get(resource);
+	    ret = (ref == null) ? null : ref.get();
+	}
+
+	if(ret != null) {
+	    hits.incrementAndGet();
+	    return ret;
+	}
+
+	//parsed outside of any lock, two threads missing on the same resource
+	//may both parse it, which is harmless
+	misses.incrementAndGet();
+	ret = loader.load(roots[index], resource);
+	if(bounded != null) {
+	    putBounded(resource, ret);
+	}
+	else {
+	    putSoft(resource, ret);
+	}
+
+	return ret;
+    }
+
+    NodeCacheStats getStats() {
+	int size;
+	long estimated;
+	if(unbounded != null) {
+	    size = unbounded.length;
+	    estimated = -1L;
+	}
+	else if(bounded != null) {
+	    synchronized(this) {
+		size = bounded.size();
+		estimated = (maxBytes > 0) ? bytes : -1L;
+	    }
+	}
+	else {
+	    expunge();
+	    size = soft.size();
+	    estimated = -1L;
+	}
+
+	return new NodeCacheStats(size, estimated, hits.get(), misses.get(), evictions.get());
+    }
+}
@@ -0,0 +1,54 @@
+package classpath.scan;
+
+/**
+ * Immutable snapshot of the counters of the <code>ClassNode</code> cache of a <code>ClassScanner</code>.
+ * Use it to size the cache limits set through {@link ScanOptions#withNodeCacheLimits(int, long)}.
+ * Hits and misses are only counted for bounded and soft caches, an unbounded cache never misses.
+ */
+public final class NodeCacheStats {
+
+    private final int size;
+    private final long estimatedBytes;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    NodeCacheStats(final int size, final long estimatedBytes, final long hits, final long misses, final long evictions) {
+	this.size = size;
+	this.estimatedBytes = estimatedBytes;
+	this.hits = hits;
+	this.misses = misses;
+	this.evictions = evictions;
+    }
+
+    /**
+     * @return The number of nodes currently cached
+     */
+    public int getSize() { return size; }
+
+    /**
+     * @return The estimated heap retained by the cached nodes, or -1 if the cache has no byte budget
+     */
+    public long getEstimatedBytes() { return estimatedBytes; }
+
+    /**
+     * @return The number of lookups answered from the cache
+     */
+    public long getHits() { return hits; }
+
+    /**
+     * @return The number of lookups that had to parse the class again
+     */
+    public long getMisses() { return misses; }
+
+    /**
+     * @return The number of nodes evicted by the limits or cleared by the garbage collector
+     */
+    public long getEvictions() { return evictions; }
+
+    @Override
+    public String toString() {
+	return String.format("size=%d estimatedBytes=%d hits=%d misses=%d evictions=%d",
+			     size, estimatedBytes, hits, misses, evictions);
+    }
+}
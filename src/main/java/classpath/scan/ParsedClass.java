@@ -0,0 +1,21 @@
+package classpath.scan;
+
+import classpath.scan.jarjar.tree.ClassNode;
+
+/**
+ * Everything Classpath Scan extracts from a single class resource. Internal to Classpath Scan.
+ */
+final class ParsedClass {
+
+    final ClassNode node;
+
+    /**
+     * The constant pool references of the class, or <code>null</code> if they were not extracted
+     */
+    final String[] references;
+
+    ParsedClass(final ClassNode node, final String[] references) {
+	this.node = node;
+	this.references = references;
+    }
+}
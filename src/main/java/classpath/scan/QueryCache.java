@@ -0,0 +1,122 @@
+package classpath.scan;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Memoized query results of a <code>ClassScanner</code>.  Internal to Classpath Scan.
+ *
+ * <p>Computation is single flight: the first thread asking for a key computes the result,
+ * any thread asking for the same key meanwhile waits for that computation instead of
+ * starting its own.  A computation that fails is forgotten so the next caller tries again.
+ *
+ * <p>Finders passed a type are keyed with {@link #key(String, Class)}, which only holds the type
+ * weakly, so memoizing a query never keeps a class, or its classloader, from being unloaded.
+ */
+final class QueryCache {
+
+    /**
+     * Key of a finder passed a type.  Equal for the same finder and the same <code>Class</code>,
+     * which is only compared while it is reachable: a same named class from another classloader
+     * may give different results, for example when matching annotations through reflection.
+     */
+    private static final class TypeKey {
+	final String finder;
+	final String name;
+	final WeakReference<Class<?>> type;
+
+	TypeKey(final String finder, final Class<?> type) {
+	    this.finder = finder;
+	    this.name = type.getName();
+	    this.type = new WeakReference<Class<?>>(type);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if(!(obj instanceof TypeKey)) {
+		return false;
+	    }
+
+	    TypeKey that = (TypeKey) obj;
+	    Class<?> referent = type.get();
+	    return this == that
+		|| (finder.equals(that.finder) && name.equals(that.name) && referent != null && referent == that.type.get());
+	}
+
+	@Override
+	public int hashCode() {
+	    return (31 * finder.hashCode()) + name.hashCode();
+	}
+    }
+
+    private final ConcurrentMap<Object,FutureTask<?>> results = new ConcurrentHashMap<>();
+
+    /**
+     * @return The key of <code>finder</code> passed <code>type</code>
+     */
+    static Object key(final String finder, final Class<?> type) {
+	return new TypeKey(finder, type);
+    }
+
+    /**
+     * Returns the result memoized for <code>key</code>, computing it with <code>compute</code> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(final Object key, final Callable<T> compute) {
+	FutureTask<?> task = results.get(key);
+	if(task == null) {
+	    FutureTask<T> created = new FutureTask<>(compute);
+	    task = results.putIfAbsent(key, created);
+	    if(task == null) {
+		purge();
+		//not run inside the map so queries may memoize other queries while they compute
+		task = created;
+		created.run();
+	    }
+	}
+
+	try {
+	    return (T) task.get();
+	}
+	catch(InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(ex);
+	}
+	catch(ExecutionException ex) {
+	    results.remove(key, task);
+	    Throwable cause = ex.getCause();
+	    if(cause instanceof RuntimeException) {
+		throw (RuntimeException) cause;
+	    }
+	    else if(cause instanceof Error) {
+		throw (Error) cause;
+	    }
+	    else {
+		throw new RuntimeException(cause);
+	    }
+	}
+    }
+
+    /**
+     * Forgets the results of types which have been unloaded, cheap next to the query being computed
+     */
+    private void purge() {
+	for(Object key : results.keySet()) {
+	    if(key instanceof TypeKey && ((TypeKey) key).type.get() == null) {
+		results.remove(key);
+	    }
+	}
+    }
+
+    int size() {
+	return results.size();
+    }
+
+    void clear() {
+	results.clear();
+    }
+}
@@ -0,0 +1,226 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import classpath.scan.jarjar.ClassReader;
+
+/**
+ * Index of the types, methods, and fields referenced by each scanned class.  The index is
+ * built from the constant pool of each class (<code>Class</code>, <code>Fieldref</code>,
+ * <code>Methodref</code>, <code>InterfaceMethodref</code>, <code>MethodType</code>, and
+ * <code>InvokeDynamic</code> entries) without walking any instructions, so it is cheap to
+ * build.  Enable it with {@link ScanOptions#withReferenceIndex(boolean)} and retrieve it with
+ * {@link ClassScanner#getReferenceIndex()}.
+ *
+ * <p>References are recorded exactly as they appear in the constant pool. A method or field
+ * reference names the type used at the call site, which is not necessarily the type declaring
+ * the member.  Types only mentioned in annotations or generic signatures are not references.
+ * A class never references itself.
+ *
+ * <p>All queries take and return binary class names (the names returned by
+ * <code>Class.getName()</code>) and never load any classes.
+ */
+public final class ReferenceIndex {
+
+    private static final char TYPE = 'T';
+    private static final char METHOD = 'M';
+    private static final char FIELD = 'F';
+
+    private static final int[] NONE = new int[0];
+
+    private String[] classes;
+    private Map<String,int[]> index;
+
+    //only used while the scanner is being constructed, see freeze
+    private List<String> building = new ArrayList<>();
+    private Map<String,IdList> postings = new HashMap<>();
+
+    ReferenceIndex() {
+	this.classes = null;
+	this.index = null;
+    }
+
+    /**
+     * Adds the references of a class.  Only called while the scanner is being constructed,
+     * once per class: a class in several roots is only added from the root the scanner
+     * takes it from, see <code>ClassScanner.accept</code>.
+     */
+    void add(final ParsedClass pc) {
+	int id = building.size();
+	building.add(ClassScanner.cleanClass(pc.node.name));
+	for(String key : pc.references) {
+	    IdList ids = postings.get(key);
+	    if(ids == null) {
+		ids = new IdList();
+		postings.put(key, ids);
+	    }
+
+	    ids.add(id);
+	}
+    }
+
+    /**
+     * Compacts the index once every class has been added.
+     */
+    void freeze() {
+	//every class is added once, in id order, and references are unique per
+	//class, so each list is already sorted and free of duplicates
+	classes = building.toArray(new String[building.size()]);
+	index = new HashMap<>(postings.size() * 4 / 3 + 1);
+	for(Map.Entry<String,IdList> entry : postings.entrySet()) {
+	    IdList ids = entry.getValue();
+	    index.put(entry.getKey(), ids.toArray());
+	}
+
+	building = null;
+	postings = null;
+    }
+
+    /**
+     * Extracts the references held in the constant pool of a class.
+     */
+    static String[] references(final ClassReader reader) {
+	Set<String> ret = new HashSet<>();
+	char[] buf = new char[reader.getMaxStringLength()];
+	String self = reader.getClassName();
+	for(int i = 1; i < reader.getItemCount(); ++i) {
+	    int item = reader.getItem(i);
+	    if(item == 0) {
+		//second slot of a long or double
+		continue;
+	    }
+
+	    switch(reader.b[item - 1]) {
+	    case 7: //Class
+		addType(ret, reader.readUTF8(item, buf), self);
+		break;
+	    case 9: //Fieldref
+	    case 10: //Methodref
+	    case 11: { //InterfaceMethodref
+		String owner = reader.readClass(item, buf);
+		int nameAndType = reader.getItem(reader.readUnsignedShort(item + 2));
+		String name = reader.readUTF8(nameAndType, buf);
+		String desc = reader.readUTF8(nameAndType + 2, buf);
+		addType(ret, owner, self);
+		addDescriptor(ret, desc, self);
+		if(!owner.equals(self) && owner.charAt(0) != '[') {
+		    char kind = (reader.b[item - 1] == 9) ? FIELD : METHOD;
+		    ret.add(kind + ClassScanner.cleanClass(owner) + '.' + name);
+		}
+		break;
+	    }
+	    case 16: //MethodType
+		addDescriptor(ret, reader.readUTF8(item, buf), self);
+		break;
+	    case 18: { //InvokeDynamic
+		int nameAndType = reader.getItem(reader.readUnsignedShort(item + 2));
+		addDescriptor(ret, reader.readUTF8(nameAndType + 2, buf), self);
+		break;
+	    }
+	    default:
+		break;
+	    }
+	}
+
+	return ret.toArray(new String[ret.size()]);
+    }
+
+    private static void addType(final Set<String> refs, final String internalName, final String self) {
+	if(internalName.charAt(0) == '[') {
+	    addDescriptor(refs, internalName, self);
+	}
+	else if(!internalName.equals(self)) {
+	    refs.add(TYPE + ClassScanner.cleanClass(internalName));
+	}
+    }
+
+    private static void addDescriptor(final Set<String> refs, final String desc, final String self) {
+	int start = desc.indexOf('L');
+	while(start != -1) {
+	    int end = desc.indexOf(';', start);
+	    addType(refs, desc.substring(start + 1, end), self);
+	    start = desc.indexOf('L', end);
+	}
+    }
+
+    private Set<String> lookup(final String key) {
+	int[] ids = index.get(key);
+	if(ids == null) {
+	    ids = NONE;
+	}
+
+	Set<String> ret = new LinkedHashSet<>();
+	for(int id : ids) {
+	    ret.add(classes[id]);
+	}
+
+	return Collections.unmodifiableSet(ret);
+    }
+
+    /**
+     * @return The number of classes in the index
+     */
+    public int size() {
+	return classes.length;
+    }
+
+    /**
+     * Finds every class referencing a type, either directly, as the owner of a referenced
+     * member, or as part of the descriptor of a referenced member.
+     *
+     * @param className The binary name of the referenced type
+     * @return The names of the classes referencing the type
+     */
+    public Set<String> findReferencesTo(final String className) {
+	return lookup(TYPE + className);
+    }
+
+    /**
+     * @see #findReferencesTo(String)
+     */
+    public Set<String> findReferencesTo(final Class<?> type) {
+	return findReferencesTo(type.getName());
+    }
+
+    /**
+     * Finds every class referencing a method, regardless of the descriptor of the method.
+     *
+     * @param className The binary name of the type named at the call site
+     * @param methodName The name of the method, <code>&lt;init&gt;</code> for constructors
+     * @return The names of the classes referencing the method
+     */
+    public Set<String> findMethodReferences(final String className, final String methodName) {
+	return lookup(METHOD + className + '.' + methodName);
+    }
+
+    /**
+     * @see #findMethodReferences(String, String)
+     */
+    public Set<String> findMethodReferences(final Class<?> type, final String methodName) {
+	return findMethodReferences(type.getName(), methodName);
+    }
+
+    /**
+     * Finds every class reading or writing a field.
+     *
+     * @param className The binary name of the type named at the access site
+     * @param fieldName The name of the field
+     * @return The names of the classes referencing the field
+     */
+    public Set<String> findFieldReferences(final String className, final String fieldName) {
+	return lookup(FIELD + className + '.' + fieldName);
+    }
+
+    /**
+     * @see #findFieldReferences(String, String)
+     */
+    public Set<String> findFieldReferences(final Class<?> type, final String fieldName) {
+	return findFieldReferences(type.getName(), fieldName);
+    }
+}
@@ -0,0 +1,449 @@
+package classpath.scan;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Compact, immutable, sorted set of resource names used by <code>Root</code>.  Internal to Classpath Scan.
+ *
+ * <p>Names are front coded: they are grouped into blocks of {@link #BLOCK_SIZE} names and every
+ * name after the first in a block is stored as the length of the prefix it shares with the
+ * previous name plus the UTF-8 bytes of the remaining suffix.  Since resource names share long
+ * package prefixes this takes a small fraction of the memory of a <code>TreeSet</code> of
+ * <code>String</code>s.  The first name of every block is also kept as a <code>String</code>,
+ * lookups binary search those and then compare against at most one block, without creating
+ * a <code>String</code> for any entry.  Iteration does create one per entry, so hot paths
+ * should iterate something else, see <code>NodeCache</code>.
+ *
+ * <p>Subsets are views sharing the same data, so prefix ranges such as all resources in a
+ * package are cheap to create and iterate.
+ */
+final class ResourceDictionary extends AbstractSet<String> implements SortedSet<String> {
+
+    static final int BLOCK_SIZE = 16;
+
+    private final byte[] data;
+    private final int[] blocks;
+    private final String[] heads;
+    private final int size;
+
+    //range of this view, [from, to)
+    private final int from;
+    private final int to;
+
+    private int hash;
+
+    private ResourceDictionary(final byte[] data, final int[] blocks, final String[] heads,
+			       final int size, final int from, final int to) {
+	this.data = data;
+	this.blocks = blocks;
+	this.heads = heads;
+	this.size = size;
+	this.from = from;
+	this.to = to;
+    }
+
+    /**
+     * Builds a dictionary holding <code>resources</code>, which are sorted into their natural order first if needed.
+     */
+    static ResourceDictionary of(final Collection<String> resources) {
+	if(resources instanceof ResourceDictionary) {
+	    return (ResourceDictionary) resources;
+	}
+
+	List<String> sorted = new ArrayList<>(resources);
+	if(!(resources instanceof SortedSet) || ((SortedSet<String>) resources).comparator() != null) {
+	    Collections.sort(sorted);
+	}
+
+	ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+	int blockCount = (sorted.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	int[] blocks = new int[blockCount];
+	String[] heads = new String[blockCount];
+	byte[] previous = new byte[0];
+	String previousResource = null;
+	int count = 0;
+	for(String resource : sorted) {
+	    if(resource.equals(previousResource)) {
+		continue;
+	    }
+
+	    byte[] current = resource.getBytes(StandardCharsets.UTF_8);
+	    int shared = 0;
+	    if(count % BLOCK_SIZE == 0) {
+		blocks[count / BLOCK_SIZE] = ostream.size();
+		heads[count / BLOCK_SIZE] = resource;
+	    }
+	    else {
+		int max = Math.min(previous.length, current.length);
+		while(shared < max && previous[shared] == current[shared]) {
+		    ++shared;
+		}
+	    }
+
+	    writeInt(ostream, shared);
+	    writeInt(ostream, current.length - shared);
+	    ostream.write(current, shared, current.length - shared);
+	    previous = current;
+	    previousResource = resource;
+	    ++count;
+	}
+
+	//duplicates in an unsorted input can leave unused blocks at the end
+	int used = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	return new ResourceDictionary(ostream.toByteArray(), Arrays.copyOf(blocks, used),
+				      Arrays.copyOf(heads, used), count, 0, count);
+    }
+
+    private static void writeInt(final ByteArrayOutputStream ostream, int value) {
+	while((value & ~0x7F) != 0) {
+	    ostream.write((value & 0x7F) | 0x80);
+	    value >>>= 7;
+	}
+
+	ostream.write(value);
+    }
+
+    /**
+     * Sequential decoder positioned on an entry of the dictionary
+     */
+    private final class Cursor {
+	private byte[] buffer = new byte[64];
+	private int length;
+	private int offset;
+	private int index;
+
+	Cursor(final int index) {
+	    seek(index);
+	}
+
+	private int readInt() {
+	    int ret = 0;
+	    int shift = 0;
+	    byte b;
+	    do {
+		b = data[offset++];
+		ret |= (b & 0x7F) << shift;
+		shift += 7;
+	    } while((b & 0x80) != 0);
+
+	    return ret;
+	}
+
+	private void decode() {
+	    int shared = readInt();
+	    int suffix = readInt();
+	    if(buffer.length < shared + suffix) {
+		buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, shared + suffix));
+	    }
+
+	    System.arraycopy(data, offset, buffer, shared, suffix);
+	    offset += suffix;
+	    length = shared + suffix;
+	}
+
+	/**
+	 * Positions the cursor on <code>target</code>, decoding from the start of its block
+	 */
+	void seek(final int target) {
+	    index = target - (target % BLOCK_SIZE);
+	    if(index >= size) {
+		index = target;
+		return;
+	    }
+
+	    offset = blocks[index / BLOCK_SIZE];
+	    decode();
+	    while(index < target) {
+		next();
+	    }
+	}
+
+	/**
+	 * Moves the cursor to the next entry
+	 */
+	void next() {
+	    ++index;
+	    if(index < size) {
+		decode();
+	    }
+	}
+
+	String current() {
+	    return new String(buffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares the current entry to <code>key</code> in <code>String</code> order, decoding
+	 * the UTF-8 bytes one character at a time instead of creating a <code>String</code>
+	 */
+	int compareTo(final String key) {
+	    int pos = 0;
+	    int i = 0;
+	    while(pos < length) {
+		int b = buffer[pos] & 0xFF;
+		int codePoint;
+		if(b < 0x80) {
+		    codePoint = b;
+		    pos += 1;
+		}
+		else if(b < 0xE0) {
+		    codePoint = ((b & 0x1F) << 6) | (buffer[pos + 1] & 0x3F);
+		    pos += 2;
+		}
+		else if(b < 0xF0) {
+		    codePoint = ((b & 0x0F) << 12) | ((buffer[pos + 1] & 0x3F) << 6) | (buffer[pos + 2] & 0x3F);
+		    pos += 3;
+		}
+		else {
+		    codePoint = ((b & 0x07) << 18) | ((buffer[pos + 1] & 0x3F) << 12)
+			| ((buffer[pos + 2] & 0x3F) << 6) | (buffer[pos + 3] & 0x3F);
+		    pos += 4;
+		}
+
+		//String order compares UTF-16 chars, so characters outside the
+		//basic plane are compared as their two surrogates
+		int diff;
+		if(codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+		    diff = compareChar((char) codePoint, key, i++);
+		}
+		else {
+		    diff = compareChar(Character.highSurrogate(codePoint), key, i++);
+		    if(diff == 0) {
+			diff = compareChar(Character.lowSurrogate(codePoint), key, i++);
+		    }
+		}
+
+		if(diff != 0) {
+		    return diff;
+		}
+	    }
+
+	    return (i == key.length()) ? 0 : -1;
+	}
+    }
+
+    private static int compareChar(final char c, final String key, final int index) {
+	return (index < key.length()) ? c - key.charAt(index) : 1;
+    }
+
+    /**
+     * @return The index of the first entry not less than <code>key</code>
+     */
+    private int lowerBound(final String key) {
+	int block = Arrays.binarySearch(heads, key);
+	if(block >= 0) {
+	    return block * BLOCK_SIZE;
+	}
+
+	//key sorts before the head of block (-block - 1), so it can only be in the block before
+	block = -block - 2;
+	if(block < 0) {
+	    return 0;
+	}
+
+	int end = Math.min(size, (block + 1) * BLOCK_SIZE);
+	Cursor cursor = new Cursor(block * BLOCK_SIZE);
+	while(cursor.index < end) {
+	    if(cursor.compareTo(key) >= 0) {
+		return cursor.index;
+	    }
+
+	    cursor.next();
+	}
+
+	return end;
+    }
+
+    private int clamp(final int index) {
+	return Math.max(from, Math.min(to, index));
+    }
+
+    private ResourceDictionary view(final int newFrom, final int newTo) {
+	return new ResourceDictionary(data, blocks, heads, size, newFrom, Math.max(newFrom, newTo));
+    }
+
+    /**
+     * Returns the smallest string greater than every string starting with <code>prefix</code>,
+     * or <code>null</code> if there is none.
+     */
+    private static String successor(final String prefix) {
+	StringBuilder sb = new StringBuilder(prefix);
+	while(sb.length() > 0) {
+	    char last = sb.charAt(sb.length() - 1);
+	    if(last != Character.MAX_VALUE) {
+		sb.setCharAt(sb.length() - 1, (char) (last + 1));
+		return sb.toString();
+	    }
+
+	    sb.setLength(sb.length() - 1);
+	}
+
+	return null;
+    }
+
+    /**
+     * @return A view of every entry starting with <code>prefix</code>
+     */
+    ResourceDictionary withPrefix(final String prefix) {
+	String end = successor(prefix);
+	return view(clamp(lowerBound(prefix)), (end == null) ? to : clamp(lowerBound(end)));
+    }
+
+    /**
+     * Estimates the heap retained by this dictionary, ignoring any other views of the same data.
+     */
+    long estimateRetainedSize() {
+	long ret = 64 + 16 + data.length + 16 + (blocks.length * 4L) + 16 + (heads.length * 4L);
+	for(String head : heads) {
+	    ret += 40 + head.length();
+	}
+
+	return ret;
+    }
+
+    @Override
+    public int size() {
+	return to - from;
+    }
+
+    @Override
+    public boolean contains(final Object obj) {
+	if(!(obj instanceof String)) {
+	    return false;
+	}
+
+	String key = (String) obj;
+	int index = lowerBound(key);
+	return index >= from && index < to && new Cursor(index).compareTo(key) == 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+	return new Iterator<String>() {
+	    private Cursor cursor;
+	    private int next = from;
+
+	    public boolean hasNext() {
+		return next < to;
+	    }
+
+	    public String next() {
+		if(next >= to) {
+		    throw new NoSuchElementException();
+		}
+
+		if(cursor == null) {
+		    cursor = new Cursor(next);
+		}
+		else {
+		    cursor.next();
+		}
+
+		++next;
+		return cursor.current();
+	    }
+
+	    public void remove() {
+		throw new UnsupportedOperationException();
+	    } };
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+	return null;
+    }
+
+    @Override
+    public SortedSet<String> subSet(final String fromElement, final String toElement) {
+	if(fromElement.compareTo(toElement) > 0) {
+	    throw new IllegalArgumentException("fromElement > toElement");
+	}
+
+	return view(clamp(lowerBound(fromElement)), clamp(lowerBound(toElement)));
+    }
+
+    @Override
+    public SortedSet<String> headSet(final String toElement) {
+	return view(from, clamp(lowerBound(toElement)));
+    }
+
+    @Override
+    public SortedSet<String> tailSet(final String fromElement) {
+	return view(clamp(lowerBound(fromElement)), to);
+    }
+
+    @Override
+    public String first() {
+	if(isEmpty()) {
+	    throw new NoSuchElementException();
+	}
+
+	return new Cursor(from).current();
+    }
+
+    @Override
+    public String last() {
+	if(isEmpty()) {
+	    throw new NoSuchElementException();
+	}
+
+	return new Cursor(to - 1).current();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+	if(obj instanceof ResourceDictionary) {
+	    ResourceDictionary that = (ResourceDictionary) obj;
+	    if(data == that.data && from == that.from && to == that.to) {
+		return true;
+	    }
+
+	    if(size() != that.size()) {
+		return false;
+	    }
+
+	    Iterator<String> mine = iterator();
+	    Iterator<String> theirs = that.iterator();
+	    while(mine.hasNext()) {
+		if(!mine.next().equals(theirs.next())) {
+		    return false;
+		}
+	    }
+
+	    return true;
+	}
+
+	return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+	int ret = hash;
+	if(ret == 0) {
+	    ret = hash = super.hashCode();
+	}
+
+	return ret;
+    }
+
+    @Override
+    public boolean remove(final Object obj) {
+	throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+	throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,202 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Constant time lookup of resources by name across every root of a scanner.  Retrieve
+ * one with {@link ResourceScanner#getResourceIndex()}, the index is built the first time
+ * it is requested and then reused.
+ *
+ * <p>Resources found in several roots are kept in the order of
+ * {@link ResourceScanner#getRoots()}, the "first" root of a resource is the first root
+ * in that list containing it.
+ *
+ * <p>If the scanner was constructed with <code>ScanOptions.withResourceBloomFilter(true)</code>
+ * the index also builds a Bloom filter, which answers most lookups for missing resources
+ * without hashing into the index itself.  This mainly pays off when most lookups are misses.
+ */
+public final class ResourceIndex {
+
+    //bits per resource and hash functions, gives roughly a 1% false positive rate
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+
+    //values are a Root when a resource is in one root, or a Root[] otherwise
+    private final Map<String,Object> index;
+    private final long[] bloom;
+
+    ResourceIndex(final List<Root> roots, final boolean bloomFilter) {
+	int size = 0;
+	for(Root root : roots) {
+	    size += root.getResources().size();
+	}
+
+	this.index = new HashMap<>(size * 4 / 3 + 1);
+	for(Root root : roots) {
+	    for(String resource : root.getResources()) {
+		Object existing = index.put(resource, root);
+		if(existing instanceof Root) {
+		    index.put(resource, new Root[] { (Root) existing, root });
+		}
+		else if(existing != null) {
+		    Root[] before = (Root[]) existing;
+		    Root[] after = Arrays.copyOf(before, before.length + 1);
+		    after[before.length] = root;
+		    index.put(resource, after);
+		}
+	    }
+	}
+
+	if(bloomFilter) {
+	    this.bloom = new long[Math.max(1, (index.size() * BITS_PER_ENTRY + 63) / 64)];
+	    for(String resource : index.keySet()) {
+		addToBloom(resource);
+	    }
+	}
+	else {
+	    this.bloom = null;
+	}
+    }
+
+    private static int secondHash(final String str) {
+	int h = str.hashCode() * 0x9E3779B9;
+	return (h ^ (h >>> 16)) | 1;
+    }
+
+    private void addToBloom(final String resource) {
+	long bits = bloom.length * 64L;
+	int h1 = resource.hashCode();
+	int h2 = secondHash(resource);
+	for(int i = 0; i < HASHES; ++i) {
+	    long bit = ((h1 + (i * h2)) & 0xFFFFFFFFL) % bits;
+	    bloom[(int) (bit >>> 6)] |= (1L << bit);
+	}
+    }
+
+    /**
+     * Checks the Bloom filter for a resource.  A <code>false</code> answer is always
+     * correct, a <code>true</code> answer may be wrong.  Without a Bloom filter this
+     * method always returns <code>true</code>.
+     *
+     * @param resource The name of the resource
+     * @return Whether or not the resource might be in the index
+     */
+    public boolean mightContain(final String resource) {
+	if(bloom == null) {
+	    return true;
+	}
+
+	long bits = bloom.length * 64L;
+	int h1 = resource.hashCode();
+	int h2 = secondHash(resource);
+	for(int i = 0; i < HASHES; ++i) {
+	    long bit = ((h1 + (i * h2)) & 0xFFFFFFFFL) % bits;
+	    if((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * @return Whether or not this index has a Bloom filter
+     */
+    public boolean hasBloomFilter() {
+	return bloom != null;
+    }
+
+    private Object lookup(final String resource) {
+	return mightContain(resource) ? index.get(resource) : null;
+    }
+
+    /**
+     * @param resource The name of the resource
+     * @return Whether or not any root has the resource
+     */
+    public boolean contains(final String resource) {
+	return lookup(resource) != null;
+    }
+
+    /**
+     * @param resource The name of the resource
+     * @return The first root with the resource, the root a <code>ClassScanner</code> takes a class
+     * from, or <code>null</code> if no root has it
+     */
+    public Root find(final String resource) {
+	Object found = lookup(resource);
+	return (found instanceof Root[]) ? ((Root[]) found)[0] : (Root) found;
+    }
+
+    /**
+     * @param resource The name of the resource
+     * @return Every root with the resource, in root order.  Empty if no root has it
+     */
+    public List<Root> findAll(final String resource) {
+	Object found = lookup(resource);
+	if(found == null) {
+	    return Collections.<Root>emptyList();
+	}
+	else if(found instanceof Root) {
+	    return Collections.singletonList((Root) found);
+	}
+	else {
+	    return Collections.unmodifiableList(Arrays.asList((Root[]) found));
+	}
+    }
+
+    /**
+     * Processes a resource from the first root which has it.
+     *
+     * @param resource The name of the resource
+     * @param processor Called with the contents of the resource
+     * @return The result of <code>processor</code>, or <code>null</code> if no root has the resource
+     */
+    public <T> T withStream(final String resource, final ProcessInputStream<T> processor) {
+	Root root = find(resource);
+	return (root == null) ? null : root.withStream(resource, processor);
+    }
+
+    /**
+     * Processes a resource from every root which has it.
+     *
+     * @param resource The name of the resource
+     * @param processor Called with the contents of the resource once per root
+     * @return The results of <code>processor</code>, in root order.  Empty if no root has the resource
+     */
+    public <T> List<T> withStreams(final String resource, final ProcessInputStream<T> processor) {
+	List<T> ret = new ArrayList<>();
+	for(Root root : findAll(resource)) {
+	    ret.add(root.withStream(resource, processor));
+	}
+
+	return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * @return Every resource found in more than one root, sorted by name
+     */
+    Map<String,List<Root>> duplicates() {
+	Map<String,List<Root>> ret = new TreeMap<>();
+	for(Map.Entry<String,Object> entry : index.entrySet()) {
+	    if(entry.getValue() instanceof Root[]) {
+		ret.put(entry.getKey(), Arrays.asList((Root[]) entry.getValue()));
+	    }
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The number of distinct resource names in the index
+     */
+    public int size() {
+	return index.size();
+    }
+}
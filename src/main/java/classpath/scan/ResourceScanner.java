@@ -1,15 +1,24 @@
 package classpath.scan;
 
-import java.io.File;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
 public class ResourceScanner {
@@ -54,6 +63,17 @@ public class ResourceScanner {
 	return patterns;
     }
 
+    final private ScanOptions options;
+
+    /**
+     * Returns the options this scanner was constructed with.
+     *
+     * @return The scan options
+     */
+    public ScanOptions getOptions() {
+	return options;
+    }
+
     protected static List<Pattern> fixPatterns(final Pattern[] patterns, final Pattern mustHave) {
 	if(patterns == null && mustHave == null) {
 	    return Collections.<Pattern>emptyList();
@@ -165,47 +185,270 @@ public class ResourceScanner {
 	this(fixClassLoader(classLoader), fixPrefixes(prefixes), fixPatterns(patterns, null));
     }
 
+    /**
+     * Same as <code>ResourceScanner(classLoader, prefixes, patterns)</code>, but lets
+     * you control how the scan is performed, for example by registering a {@link ScanListener}.
+     *
+     * @param classLoader The classloader to scan
+     * @param prefixes The prefixes to check
+     * @param patterns The patterns to check
+     * @param options The options controlling the scan
+     */
+    public ResourceScanner(final ClassLoader classLoader, final String[] prefixes, final Pattern[] patterns,
+			   final ScanOptions options) {
+	this(fixClassLoader(classLoader), fixPrefixes(prefixes), fixPatterns(patterns, null), options);
+    }
+
     /**
      * Internal constructor used by <code>ResourceScanner</code>.
      */
     protected ResourceScanner(final ClassLoader classLoader, final List<String> prefixes, final List<Pattern> patterns) {
+	this(classLoader, prefixes, patterns, ScanOptions.DEFAULT);
+    }
+
+    /**
+     * Internal constructor used by <code>ResourceScanner</code>.
+     */
+    protected ResourceScanner(final ClassLoader classLoader, final List<String> prefixes, final List<Pattern> patterns,
+			      final ScanOptions options) {
 	this.prefixes = Collections.unmodifiableList(prefixes);
 	this.patterns = Collections.unmodifiableList(patterns);
-	this.roots = Collections.unmodifiableList(findRoots(classLoader, new ArrayList<Root>()));
+	this.options = (options == null) ? ScanOptions.DEFAULT : options;
+	this.roots = Collections.unmodifiableList(findRoots(classLoader));
     }
 	
-    private List<Root> findRoots(final ClassLoader classLoader, final List<Root> result) {
+    private List<Root> findRoots(final ClassLoader classLoader) {
+	List<Root> ret = new ArrayList<>();
+	for(RootSource source : options.getRootSources()) {
+	    ret.addAll(source.findRoots(classLoader, prefixes, patterns, options));
+	}
+
+	return ret;
+    }
+
+    private volatile ResourceIndex resourceIndex;
+
+    /**
+     * Returns an index for looking up resources by name in constant time, instead of
+     * asking every root in turn.  The index is built on the first call and reused afterwards.
+     *
+     * @return The resource index for this scanner
+     */
+    public ResourceIndex getResourceIndex() {
+	ResourceIndex ret = resourceIndex;
+	if(ret == null) {
+	    synchronized(this) {
+		ret = resourceIndex;
+		if(ret == null) {
+		    ret = resourceIndex = new ResourceIndex(roots, options.isResourceBloomFilter());
+		}
+	    }
+	}
+
+	return ret;
+    }
+
+    /**
+     * Returns a report of every resource found in more than one root of this scanner.
+     * Only the resources matching this scanner's prefixes and patterns are checked.
+     *
+     * @return The shadowed resources of this scanner
+     */
+    public ShadowReport getShadowReport() {
+	return new ShadowReport(getResourceIndex().duplicates());
+    }
+
+    static <T> T join(final Future<T> future) {
 	try {
-	    if(classLoader == null) {
-		return result;
+	    return future.get();
+	}
+	catch(InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(ex);
+	}
+	catch(ExecutionException ex) {
+	    Throwable cause = ex.getCause();
+	    if(cause instanceof RuntimeException) {
+		throw (RuntimeException) cause;
 	    }
-	    
-	    if(classLoader instanceof URLClassLoader) {
-		URL[] urls = ((URLClassLoader) classLoader).getURLs();
-		for(URL url : urls) {
-		    if(url.getProtocol().equals("file")) {
-			File asFile = new File(url.toURI());
-			if(asFile.isDirectory()) {
-			    DirectoryRoot root = DirectoryRoot.factory(classLoader, asFile, prefixes, patterns);
-			    if(root != null) {
-				result.add(root);
-			    }
-			}
-			else if(asFile.getName().endsWith("jar")) {
-			    JarRoot root = JarRoot.factory(classLoader, asFile, prefixes, patterns);
-			    if(root != null) {
-				result.add(root);
+	    else if(cause instanceof Error) {
+		throw (Error) cause;
+	    }
+	    else {
+		throw new RuntimeException(cause);
+	    }
+	}
+    }
+
+    /**
+     * Reads every resource for which the matcher object returns <code>true</code>, from every root
+     * holding it, so a resource present in several jars is read once per jar.  Roots are read in
+     * parallel, one task per root, on the executor from the <code>ScanOptions</code>, or on
+     * {@link AsyncClassScanner#defaultExecutor()} if the options have none.  The calling thread also
+     * reads roots the executor has not started yet.
+     *
+     * @param matcher The matcher object which decides if the resource is to be read
+     * @param processor Processes the contents of each resource, called from several threads at once
+     * @return The processed contents by resource name, in root order for each resource
+     */
+    public <T> Map<String,List<T>> readMatches(final ResourceMatcher matcher, final ProcessInputStream<T> processor) {
+	return readMatches("", matcher, processor);
+    }
+
+    private <T> Map<String,List<T>> readMatches(final String prefix, final ResourceMatcher matcher,
+						final ProcessInputStream<T> processor) {
+	Executor executor = options.getExecutor();
+	if(executor == null) {
+	    executor = AsyncClassScanner.defaultExecutor();
+	}
+
+	List<FutureTask<Map<String,T>>> tasks = new ArrayList<>();
+	for(final Root root : roots) {
+	    if(root.getResources(prefix).isEmpty()) {
+		continue;
+	    }
+
+	    FutureTask<Map<String,T>> task = new FutureTask<>(new Callable<Map<String,T>>() {
+		    public Map<String,T> call() {
+			Map<String,T> ret = new LinkedHashMap<>();
+			for(String resource : root.getResources(prefix)) {
+			    if(matcher.matches(resource)) {
+				ret.put(resource, root.withStream(resource, processor));
 			    }
 			}
-		    }
+
+			return ret;
+		    } });
+	    tasks.add(task);
+	    executor.execute(task);
+	}
+
+	Map<String,List<T>> tmp = new TreeMap<>();
+	for(FutureTask<Map<String,T>> task : tasks) {
+	    task.run();
+	    for(Map.Entry<String,T> entry : join(task).entrySet()) {
+		List<T> list = tmp.get(entry.getKey());
+		if(list == null) {
+		    list = new ArrayList<>();
+		    tmp.put(entry.getKey(), list);
 		}
+
+		list.add(entry.getValue());
 	    }
+	}
 
-	    return findRoots(classLoader.getParent(), result);
+	Map<String,List<T>> ret = new TreeMap<>();
+	for(Map.Entry<String,List<T>> entry : tmp.entrySet()) {
+	    ret.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
 	}
-	catch(URISyntaxException e) {
-	    throw new RuntimeException(e);
+
+	return Collections.unmodifiableMap(ret);
+    }
+
+    private final QueryCache descriptorIndexes = new QueryCache();
+
+    /**
+     * Returns the provider lists of every <code>META-INF/services</code> file in this scanner,
+     * keyed by service type.  Only the resources this scanner was constructed to scan are
+     * aggregated, so construct it without prefixes or with <code>META-INF/services</code> as one
+     * of them.  Same as <code>getDescriptorIndex("META-INF/services/", DescriptorIndex.SERVICES)</code>.
+     *
+     * @return The service provider index
+     */
+    public DescriptorIndex getServiceIndex() {
+	return getDescriptorIndex("META-INF/services/", DescriptorIndex.SERVICES);
+    }
+
+    /**
+     * Reads every copy of every resource starting with <code>prefix</code> in parallel, see
+     * {@link #readMatches(ResourceMatcher, ProcessInputStream)}, and aggregates their lines with
+     * <code>parser</code>.  Resources are read as UTF-8.  The index is built on the first call and
+     * reused by later calls with the same prefix and parser, concurrent first calls build it once.
+     *
+     * <p>Parsers are compared with <code>equals</code>, so pass a shared constant such as
+     * {@link DescriptorIndex#KEY_VALUES}, or a parser implementing <code>equals</code>.  A parser
+     * created for each call builds a new index every time, and every one of them is kept until
+     * {@link #clearDescriptorIndexes()} is called.
+     *
+     * @param prefix The prefix of the descriptor resources, such as <code>META-INF/spring.factories</code>
+     * @param parser Parses each line of the descriptors
+     * @return The aggregated entries
+     */
+    public DescriptorIndex getDescriptorIndex(final String prefix, final LineParser parser) {
+	return descriptorIndexes.get(Arrays.asList(prefix, parser), new Callable<DescriptorIndex>() {
+		public DescriptorIndex call() {
+		    return buildDescriptorIndex(prefix, parser);
+		} });
+    }
+
+    /**
+     * Forgets every index built by {@link #getDescriptorIndex(String, LineParser)} and
+     * {@link #getServiceIndex()}, later calls read the descriptors again.
+     */
+    public void clearDescriptorIndexes() {
+	descriptorIndexes.clear();
+    }
+
+    private DescriptorIndex buildDescriptorIndex(final String prefix, final LineParser parser) {
+	Map<String,List<List<String>>> contents = readMatches(prefix, new ResourceMatcher() {
+		public boolean matches(String resource) {
+		    return true;
+		} }, new ProcessInputStream<List<String>>() {
+		public List<String> process(InputStream istream) {
+		    return readLines(istream, parser.joinsContinuations());
+		} });
+
+	DescriptorIndex.Entries entries = new DescriptorIndex.Entries();
+	for(Map.Entry<String,List<List<String>>> entry : contents.entrySet()) {
+	    for(List<String> lines : entry.getValue()) {
+		for(String line : lines) {
+		    parser.parse(entry.getKey(), line, entries);
+		}
+	    }
+	}
+
+	return new DescriptorIndex(entries);
+    }
+
+    private static List<String> readLines(final InputStream istream, final boolean joinContinuations) {
+	try {
+	    BufferedReader reader = new BufferedReader(new InputStreamReader(istream, StandardCharsets.UTF_8));
+	    List<String> ret = new ArrayList<>();
+	    StringBuilder continued = null;
+	    String line;
+	    while((line = reader.readLine()) != null) {
+		if(continued != null) {
+		    line = continued.append(line.trim()).toString();
+		    continued = null;
+		}
+
+		if(joinContinuations && endsWithContinuation(line)) {
+		    continued = new StringBuilder(line.substring(0, line.length() - 1));
+		}
+		else {
+		    ret.add(line);
+		}
+	    }
+
+	    if(continued != null) {
+		ret.add(continued.toString());
+	    }
+
+	    return ret;
+	}
+	catch(IOException ex) {
+	    throw new RuntimeException(ex);
+	}
+    }
+
+    private static boolean endsWithContinuation(final String line) {
+	//an even number of trailing backslashes are escaped backslashes
+	int count = 0;
+	for(int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; --i) {
+	    ++count;
 	}
+
+	return (count % 2) == 1;
     }
 
     /**
@@ -1,5 +1,9 @@
 package classpath.scan;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -10,22 +14,34 @@ import java.util.regex.Pattern;
 
 /**
  * Used internally by Classpath Scan to abstract different root types.
- * Classpath Scan has <code>Root</code> implementations for jars and directories.
+ * Classpath Scan has <code>Root</code> implementations for jars, directories, and
+ * resources held in memory.  Other implementations can be contributed through a {@link RootSource}.
  */
 public abstract class Root {
 
     private final ClassLoader classLoader;
-    private final SortedSet<String> resources;
+    private final ResourceDictionary resources;
 
     public Root(final ClassLoader classLoader, final SortedSet<String> resources) {
 	this.classLoader = classLoader;
-	this.resources = Collections.unmodifiableSortedSet(resources);
+	this.resources = ResourceDictionary.of(resources);
     }
 
     public SortedSet<String> getResources() {
 	return resources;
     }
 
+    /**
+     * Returns the resources of this root starting with <code>prefix</code>, for example
+     * every resource in a package.  The returned set is a view and is cheap to create.
+     *
+     * @param prefix The prefix of the resources to return, such as <code>com/foo/</code>
+     * @return The resources starting with <code>prefix</code>
+     */
+    public SortedSet<String> getResources(String prefix) {
+	return resources.withPrefix(prefix);
+    }
+
     public boolean has(String resource) {
 	return resources.contains(resource);
     }
@@ -34,6 +50,42 @@ public abstract class Root {
 	return classLoader;
     }
 
+    /**
+     * @return The directory or file this root was read from, or <code>null</code> if
+     * the root does not live on the file system
+     */
+    public File getLocation() {
+	return null;
+    }
+
+    /**
+     * Returns the uncompressed size of a resource, if it can be found without reading the resource.
+     *
+     * @param resource The name of the resource
+     * @return The size of the resource in bytes, or -1 if it is not known
+     */
+    public long getSize(String resource) {
+	return -1L;
+    }
+
+    /**
+     * Returns the CRC-32 checksum of a resource, if it can be found without reading the resource.
+     *
+     * @param resource The name of the resource
+     * @return The CRC-32 of the resource, or -1 if it is not known
+     */
+    public long getCrc(String resource) {
+	return -1L;
+    }
+
+    /**
+     * Returns a value that changes whenever the contents of <code>resource</code> change.
+     * Used to validate cached data for roots whose resources may change individually.
+     */
+    long stamp(String resource) {
+	return 0L;
+    }
+
     @Override
     public boolean equals(Object obj) {
 	if(getClass() != obj.getClass()) {
@@ -46,7 +98,25 @@ public abstract class Root {
 
     @Override
     public int hashCode() {
-	return (7 * classLoader.hashCode()) + (resources.hashCode() * 31);
+	return (7 * ((classLoader == null) ? 0 : classLoader.hashCode())) + (resources.hashCode() * 31);
+    }
+
+    /**
+     * @return Whether or not <code>resourceName</code> starts with at least one of the prefixes,
+     * always <code>true</code> if there are no prefixes
+     */
+    public static boolean matchesPrefixes(String resourceName, List<String> prefixes) {
+	if(prefixes == null || prefixes.isEmpty()) {
+	    return true;
+	}
+
+	for(String prefix : prefixes) {
+	    if(resourceName.startsWith(prefix)) {
+		return true;
+	    }
+	}
+
+	return false;
     }
 
     public static boolean matchesAll(String resourceName, List<Pattern> patterns) {
@@ -60,6 +130,44 @@ public abstract class Root {
 	return true;
     }
 
+    /**
+     * Estimates the heap retained by the resource names of this root.
+     */
+    long estimateRetainedSize() {
+	return resources.estimateRetainedSize();
+    }
+
+    private static final ProcessInputStream<byte[]> READ_FULLY = new ProcessInputStream<byte[]>() {
+	public byte[] process(InputStream istream) {
+	    try {
+		return readFully(istream);
+	    }
+	    catch(IOException ioe) {
+		throw new RuntimeException(ioe);
+	    }
+	} };
+
+    static byte[] readFully(final InputStream istream) throws IOException {
+	ByteArrayOutputStream ostream = new ByteArrayOutputStream(Math.max(istream.available(), 256));
+	byte[] buffer = new byte[8192];
+	int read;
+	while((read = istream.read(buffer)) != -1) {
+	    ostream.write(buffer, 0, read);
+	}
+
+	return ostream.toByteArray();
+    }
+
+    /**
+     * Reads the entire contents of a resource into memory.
+     *
+     * @param resource The name of the resource to read
+     * @return The contents of the resource
+     */
+    public byte[] readBytes(String resource) {
+	return withStream(resource, READ_FULLY);
+    }
+
     public abstract <T> T withStream(String resource, ProcessInputStream<T> processor);
     
     public <T> Map<String,T> withStream(ProcessInputStream<T> processor) {
@@ -0,0 +1,209 @@
+package classpath.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of scanned root data that can be shared by independent scanners.  Use
+ * {@link ScanOptions#withSharedRootCache()} to share data with every other scanner
+ * in the JVM, or create your own <code>RootCache</code> to share with a known set of scanners.
+ *
+ * <p>Data is cached per root location (directory or jar file).  Jar data is keyed
+ * by the canonical path, size, and modification time of the jar, so a jar that changes
+ * on disk is scanned again.  Parsed classes from directories are checked against the
+ * size and modification time of each class file before they are reused.
+ *
+ * <p>A <code>RootCache</code> holds at most <code>maxRoots</code> roots.  Each root is
+ * held through a <code>SoftReference</code>, so the garbage collector may also discard
+ * cached roots when memory runs low.  Scanners that already obtained data from the
+ * cache are not affected when it is discarded.
+ *
+ * <p>Parsed <code>ClassNode</code>s are shared between every scanner using the cache,
+ * <code>ClassNodeMatcher</code>s must never modify the nodes they are given.
+ */
+public final class RootCache {
+
+    /**
+     * The number of roots held by the process wide cache
+     */
+    public static final int SHARED_MAX_ROOTS = 512;
+
+    private static final RootCache SHARED = new RootCache(SHARED_MAX_ROOTS);
+
+    /**
+     * @return The process wide <code>RootCache</code>
+     */
+    public static RootCache shared() {
+	return SHARED;
+    }
+
+    /**
+     * Cached data for a single root location.  Internal to Classpath Scan.
+     */
+    static final class Entry {
+	private final Object fingerprint;
+	private volatile String[] names;
+	private final ConcurrentMap<String,CachedClass> classes = new ConcurrentHashMap<>();
+
+	Entry(final Object fingerprint) {
+	    this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return Every entry name of a jar root, unfiltered, or <code>null</code> if not yet known
+	 */
+	String[] getNames() {
+	    return names;
+	}
+
+	void setNames(final String[] names) {
+	    this.names = names;
+	}
+
+	ParsedClass getClass(final String resource, final long stamp) {
+	    CachedClass cached = classes.get(resource);
+	    return (cached != null && cached.stamp == stamp) ? cached.parsed : null;
+	}
+
+	void putClass(final String resource, final long stamp, final ParsedClass parsed) {
+	    classes.put(resource, new CachedClass(stamp, parsed));
+	}
+    }
+
+    private static final class CachedClass {
+	final long stamp;
+	final ParsedClass parsed;
+
+	CachedClass(final long stamp, final ParsedClass parsed) {
+	    this.stamp = stamp;
+	    this.parsed = parsed;
+	}
+    }
+
+    private static final class Fingerprint {
+	final long length;
+	final long lastModified;
+
+	Fingerprint(final File file) {
+	    this.length = file.isDirectory() ? 0 : file.length();
+	    this.lastModified = file.isDirectory() ? 0 : file.lastModified();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if(!(obj instanceof Fingerprint)) {
+		return false;
+	    }
+
+	    Fingerprint that = (Fingerprint) obj;
+	    return length == that.length && lastModified == that.lastModified;
+	}
+
+	@Override
+	public int hashCode() {
+	    return (int) (length ^ (lastModified * 31));
+	}
+    }
+
+    private final int maxRoots;
+    private final Map<String,SoftReference<Entry>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most <code>maxRoots</code> roots.  When more roots
+     * are scanned the least recently used root is discarded.
+     *
+     * @param maxRoots The maximum number of cached roots
+     */
+    public RootCache(final int maxRoots) {
+	if(maxRoots < 1) {
+	    throw new IllegalArgumentException("maxRoots must be positive");
+	}
+
+	this.maxRoots = maxRoots;
+	//qualified since Entry alone means Map.Entry inside a map subclass
+	this.entries = new LinkedHashMap<String,SoftReference<RootCache.Entry>>(16, 0.75f, true) {
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String,SoftReference<RootCache.Entry>> eldest) {
+		return size() > RootCache.this.maxRoots;
+	    } };
+    }
+
+    private static String identity(final File location) {
+	try {
+	    return location.getCanonicalPath();
+	}
+	catch(IOException ioe) {
+	    return location.getAbsolutePath();
+	}
+    }
+
+    /**
+     * Returns the cached data for a root location, creating empty data if the location
+     * was never cached, was discarded, or has changed since it was cached.
+     */
+    Entry entry(final File location) {
+	String key = identity(location);
+	Fingerprint fingerprint = new Fingerprint(location);
+	synchronized(entries) {
+	    SoftReference<Entry> ref = entries.get(key);
+	    Entry ret = (ref == null) ? null : ref.get();
+	    if(ret != null && ret.fingerprint.equals(fingerprint)) {
+		hits.incrementAndGet();
+		return ret;
+	    }
+
+	    misses.incrementAndGet();
+	    ret = new Entry(fingerprint);
+	    entries.put(key, new SoftReference<>(ret));
+	    return ret;
+	}
+    }
+
+    /**
+     * @return The maximum number of roots held by this cache
+     */
+    public int getMaxRoots() {
+	return maxRoots;
+    }
+
+    /**
+     * @return The number of roots currently held by this cache, including any
+     * that have been discarded by the garbage collector but not yet removed
+     */
+    public int size() {
+	synchronized(entries) {
+	    return entries.size();
+	}
+    }
+
+    /**
+     * @return The number of times a scanner found usable data for a root in this cache
+     */
+    public long getHits() {
+	return hits.get();
+    }
+
+    /**
+     * @return The number of times a scanner had to scan a root from scratch
+     */
+    public long getMisses() {
+	return misses.get();
+    }
+
+    /**
+     * Discards all cached roots
+     */
+    public void clear() {
+	synchronized(entries) {
+	    entries.clear();
+	}
+    }
+}
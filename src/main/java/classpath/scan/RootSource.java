@@ -0,0 +1,28 @@
+package classpath.scan;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Contributes the <code>Root</code>s a <code>ResourceScanner</code> scans.  Register sources with
+ * {@link ScanOptions#withRootSource(RootSource)}.  By default a scanner uses only
+ * {@link UrlRootSource#URL_CLASS_LOADERS}, which finds the directories and jars of every
+ * <code>URLClassLoader</code> from the scanned classloader up to the bootstrap classloader.
+ *
+ * <p>Implementations must only put resources matching at least one of the prefixes, if there
+ * are any, and all of the patterns in their roots, see {@link Root#matchesPrefixes(String, List)}
+ * and {@link Root#matchesAll(String, List)}.  Roots without any matching resource should not
+ * be returned at all.  Sources may report each root they create to
+ * <code>options.getListeners()</code>.
+ */
+public interface RootSource {
+
+    /**
+     * @param classLoader The classloader being scanned
+     * @param prefixes The prefixes resources must start with, any prefix will do.  Empty to accept every resource.
+     * @param patterns The patterns resources must match, all of them
+     * @param options The options of the scanner
+     * @return The roots contributed by this source, never <code>null</code>
+     */
+    public List<Root> findRoots(ClassLoader classLoader, List<String> prefixes, List<Pattern> patterns, ScanOptions options);
+}
@@ -0,0 +1,201 @@
+package classpath.scan;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Optional <code>java.lang.instrument</code> agent which captures the bytes of classes as the JVM
+ * defines them, so a <code>ClassScanner</code> parses already loaded classes from memory instead
+ * of reading them from their jar or directory a second time.  Classes that are not loaded yet
+ * are still read from their roots, so combined with an {@link AsyncClassScanner} the scan of
+ * the remaining classes happens in the background.
+ *
+ * <p>Start the JVM with <code>-javaagent:classpathscan.jar=com.foo,org.bar</code>, or attach the
+ * agent later.  The agent argument is a required comma separated list of packages, only classes
+ * in those packages are captured since captured bytes are kept in memory for as long as their
+ * classloader is alive.  Scanners only use captured classes when constructed with
+ * <code>ScanOptions.withLiveClasses(true)</code>, and never store them in a {@link RootCache}.
+ *
+ * <p>The bytes of a class are dropped once such a scanner has parsed them, so a later scanner
+ * reads the class from its root.  Bytes no scanner parses are kept until {@link #release()}
+ * is called or their classloader is collected.
+ *
+ * <p>The transformer never modifies a class.  Bytes are captured as they are passed to it, so
+ * classes changed by transformers registered before this agent are scanned as changed.
+ * Captured classes are only parsed when a scanner is constructed, not while they are defined,
+ * to keep class loading as fast as possible.
+ */
+public final class ScanAgent {
+
+    private static final Transformer TRANSFORMER = new Transformer();
+    private static volatile boolean installed;
+
+    private ScanAgent() { }
+
+    /**
+     * Entry point used by <code>-javaagent</code>.  From then on the bytes of every class defined
+     * in the packages of <code>args</code> are kept in memory, until a scanner using live classes
+     * parses them or {@link #release()} is called.  Without such a scanner they are kept for as
+     * long as their classloader is alive, so only start the agent for applications that use
+     * <code>ScanOptions.withLiveClasses(true)</code>.
+     */
+    public static void premain(final String args, final Instrumentation instrumentation) {
+	install(args, instrumentation);
+    }
+
+    /**
+     * Entry point used when the agent is attached to a running JVM.  Classes
+     * loaded before the agent was attached are read from their roots.
+     */
+    public static void agentmain(final String args, final Instrumentation instrumentation) {
+	install(args, instrumentation);
+    }
+
+    private static synchronized void install(final String args, final Instrumentation instrumentation) {
+	if(installed) {
+	    return;
+	}
+
+	List<String> prefixes = prefixes(args);
+	if(prefixes.isEmpty()) {
+	    throw new IllegalArgumentException("ScanAgent needs the packages to capture, such as "
+					       + "-javaagent:classpathscan.jar=com.foo,org.bar");
+	}
+
+	TRANSFORMER.setPrefixes(prefixes);
+	instrumentation.addTransformer(TRANSFORMER, false);
+	installed = true;
+    }
+
+    static List<String> prefixes(final String args) {
+	if(args == null || args.trim().isEmpty()) {
+	    return Collections.<String>emptyList();
+	}
+
+	List<String> ret = new ArrayList<>();
+	for(String pkg : args.split(",")) {
+	    if(!pkg.trim().isEmpty()) {
+		ret.add(pkg.trim().replace('.', '/'));
+	    }
+	}
+
+	return Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * @return Whether or not the agent was started in this JVM
+     */
+    public static boolean isInstalled() {
+	return installed;
+    }
+
+    /**
+     * Returns the transformer capturing class bytes, exposed so it can be fed directly in tests.
+     *
+     * @param args The packages to capture, in the format of the agent argument
+     */
+    static ClassFileTransformer transformer(final String args) {
+	TRANSFORMER.setPrefixes(prefixes(args));
+	return TRANSFORMER;
+    }
+
+    /**
+     * Returns the bytes captured for a class resource, or <code>null</code> if the class was not captured.
+     */
+    static byte[] liveBytes(final ClassLoader classLoader, final String resource) {
+	return TRANSFORMER.get(classLoader, resource);
+    }
+
+    /**
+     * Returns the bytes captured for a class resource and forgets them, or returns
+     * <code>null</code> if the class was not captured.
+     */
+    static byte[] takeLiveBytes(final ClassLoader classLoader, final String resource) {
+	return TRANSFORMER.take(classLoader, resource);
+    }
+
+    /**
+     * Forgets every captured class, for example once every scanner an application needs has been constructed.
+     */
+    public static void release() {
+	TRANSFORMER.clear();
+    }
+
+    private static final class Transformer implements ClassFileTransformer {
+
+	private volatile List<String> prefixes = Collections.<String>emptyList();
+	private volatile boolean empty = true;
+
+	//weak so captured classes never keep their classloader alive
+	private final Map<ClassLoader,ConcurrentMap<String,byte[]>> classes = new WeakHashMap<>();
+
+	void setPrefixes(final List<String> prefixes) {
+	    this.prefixes = prefixes;
+	}
+
+	public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined,
+				final ProtectionDomain protectionDomain, final byte[] classfileBuffer) {
+	    //the bootstrap loader is never scanned, and redefinitions do not change the defined class.
+	    //Without prefixes nothing is captured, unlike for scanners
+	    List<String> prefixes = this.prefixes;
+	    if(loader != null && className != null && classBeingRedefined == null && !prefixes.isEmpty()
+	       && Root.matchesPrefixes(className, prefixes)) {
+		ConcurrentMap<String,byte[]> forLoader;
+		synchronized(classes) {
+		    forLoader = classes.get(loader);
+		    if(forLoader == null) {
+			forLoader = new ConcurrentHashMap<>();
+			classes.put(loader, forLoader);
+		    }
+		}
+
+		forLoader.put(className + ".class", classfileBuffer);
+		empty = false;
+	    }
+
+	    //never modifies the class
+	    return null;
+	}
+
+	byte[] get(final ClassLoader loader, final String resource) {
+	    if(empty || loader == null) {
+		return null;
+	    }
+
+	    ConcurrentMap<String,byte[]> forLoader;
+	    synchronized(classes) {
+		forLoader = classes.get(loader);
+	    }
+
+	    return (forLoader == null) ? null : forLoader.get(resource);
+	}
+
+	byte[] take(final ClassLoader loader, final String resource) {
+	    if(empty || loader == null) {
+		return null;
+	    }
+
+	    ConcurrentMap<String,byte[]> forLoader;
+	    synchronized(classes) {
+		forLoader = classes.get(loader);
+	    }
+
+	    return (forLoader == null) ? null : forLoader.remove(resource);
+	}
+
+	void clear() {
+	    synchronized(classes) {
+		classes.clear();
+		empty = true;
+	    }
+	}
+    }
+}
@@ -0,0 +1,50 @@
+package classpath.scan;
+
+/**
+ * Callback interface used to observe the work a <code>ResourceScanner</code> or
+ * <code>ClassScanner</code> performs.  Every method has an empty default implementation,
+ * so implementations only need to override the events they care about.
+ *
+ * <p>Listeners are registered through {@link ScanOptions#withListener(ScanListener)}.
+ * Callbacks may be made from several threads at once when scanning in parallel, so
+ * implementations must be thread safe.  Callbacks are made on the scanning thread,
+ * keep them cheap.
+ */
+public interface ScanListener {
+
+    /**
+     * Called after the resources of a root have been enumerated.
+     *
+     * @param root The root that was enumerated
+     * @param nanos The time in nanoseconds it took to enumerate and filter the resources of the root
+     */
+    default void rootEnumerated(Root root, long nanos) { }
+
+    /**
+     * Called after the contents of a resource have been read.
+     *
+     * @param root The root the resource was read from
+     * @param resource The name of the resource
+     * @param bytes The number of bytes read
+     */
+    default void resourceRead(Root root, String resource, long bytes) { }
+
+    /**
+     * Called after a class resource has been parsed into a <code>ClassNode</code>.
+     *
+     * @param root The root the class was read from
+     * @param resource The name of the class resource
+     * @param nanos The time in nanoseconds spent parsing the class
+     * @param retainedBytes An estimate of the heap retained by the parsed <code>ClassNode</code>
+     */
+    default void classParsed(Root root, String resource, long nanos, long retainedBytes) { }
+
+    /**
+     * Called after a query on a scanner has finished.
+     *
+     * @param query A description of the query
+     * @param results The number of results returned by the query
+     * @param nanos The time in nanoseconds the query took
+     */
+    default void queryCompleted(String query, int results, long nanos) { }
+}
@@ -0,0 +1,222 @@
+package classpath.scan;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the metrics collected by a {@link MetricsListener}.
+ * All times are in nanoseconds and all sizes are in bytes.  Retained sizes are
+ * estimates computed from the structure of the parsed classes, not measurements.
+ */
+public final class ScanMetrics {
+
+    /**
+     * Metrics for a single root
+     */
+    public static final class RootMetrics {
+	private final String root;
+	private final int resources;
+	private final long enumerationNanos;
+	private final long bytesRead;
+	private final int classesParsed;
+	private final long parseNanos;
+	private final long retainedBytes;
+
+	RootMetrics(final String root, final int resources, final long enumerationNanos, final long bytesRead,
+		    final int classesParsed, final long parseNanos, final long retainedBytes) {
+	    this.root = root;
+	    this.resources = resources;
+	    this.enumerationNanos = enumerationNanos;
+	    this.bytesRead = bytesRead;
+	    this.classesParsed = classesParsed;
+	    this.parseNanos = parseNanos;
+	    this.retainedBytes = retainedBytes;
+	}
+
+	/**
+	 * @return A description of the root, usually the path to the directory or jar
+	 */
+	public String getRoot() { return root; }
+
+	/**
+	 * @return The number of resources in the root that matched the scanner's prefixes and patterns
+	 */
+	public int getResources() { return resources; }
+
+	/**
+	 * @return The time spent enumerating and filtering the resources of the root
+	 */
+	public long getEnumerationNanos() { return enumerationNanos; }
+
+	/**
+	 * @return The number of bytes read from the root
+	 */
+	public long getBytesRead() { return bytesRead; }
+
+	/**
+	 * @return The number of classes parsed from the root
+	 */
+	public int getClassesParsed() { return classesParsed; }
+
+	/**
+	 * @return The time spent parsing classes from the root
+	 */
+	public long getParseNanos() { return parseNanos; }
+
+	/**
+	 * @return The estimated heap retained by the resource names and parsed classes of the root
+	 */
+	public long getRetainedBytes() { return retainedBytes; }
+
+	@Override
+	public String toString() {
+	    return String.format("%s: resources=%d enumeration=%.3fms read=%dB parsed=%d parse=%.3fms retained~%dB",
+				 root, resources, enumerationNanos / 1e6, bytesRead, classesParsed, parseNanos / 1e6, retainedBytes);
+	}
+    }
+
+    /**
+     * Latency metrics for all executions of a single query
+     */
+    public static final class QueryMetrics {
+	private final String query;
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+
+	QueryMetrics(final String query, final long count, final long totalNanos, final long maxNanos) {
+	    this.query = query;
+	    this.count = count;
+	    this.totalNanos = totalNanos;
+	    this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * @return The description of the query
+	 */
+	public String getQuery() { return query; }
+
+	/**
+	 * @return The number of times the query was executed
+	 */
+	public long getCount() { return count; }
+
+	/**
+	 * @return The time spent executing the query, summed over all executions
+	 */
+	public long getTotalNanos() { return totalNanos; }
+
+	/**
+	 * @return The time spent by the slowest execution of the query
+	 */
+	public long getMaxNanos() { return maxNanos; }
+
+	/**
+	 * @return The average time spent executing the query
+	 */
+	public long getAverageNanos() { return count == 0 ? 0 : totalNanos / count; }
+
+	@Override
+	public String toString() {
+	    return String.format("%s: count=%d avg=%.3fms max=%.3fms",
+				 query, count, getAverageNanos() / 1e6, maxNanos / 1e6);
+	}
+    }
+
+    private final List<RootMetrics> roots;
+    private final Map<String,QueryMetrics> queries;
+
+    ScanMetrics(final List<RootMetrics> roots, final Map<String,QueryMetrics> queries) {
+	this.roots = Collections.unmodifiableList(roots);
+	this.queries = Collections.unmodifiableMap(queries);
+    }
+
+    /**
+     * @return Metrics for every observed root, in the order the roots were first observed
+     */
+    public List<RootMetrics> getRoots() {
+	return roots;
+    }
+
+    /**
+     * @return Metrics for every observed query, keyed by the query description
+     */
+    public Map<String,QueryMetrics> getQueries() {
+	return queries;
+    }
+
+    /**
+     * @return The time spent enumerating all roots
+     */
+    public long getEnumerationNanos() {
+	long ret = 0;
+	for(RootMetrics root : roots) {
+	    ret += root.getEnumerationNanos();
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The number of bytes read from all roots
+     */
+    public long getBytesRead() {
+	long ret = 0;
+	for(RootMetrics root : roots) {
+	    ret += root.getBytesRead();
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The number of classes parsed from all roots
+     */
+    public int getClassesParsed() {
+	int ret = 0;
+	for(RootMetrics root : roots) {
+	    ret += root.getClassesParsed();
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The time spent parsing classes from all roots
+     */
+    public long getParseNanos() {
+	long ret = 0;
+	for(RootMetrics root : roots) {
+	    ret += root.getParseNanos();
+	}
+
+	return ret;
+    }
+
+    /**
+     * @return The estimated heap retained by all roots
+     */
+    public long getRetainedBytes() {
+	long ret = 0;
+	for(RootMetrics root : roots) {
+	    ret += root.getRetainedBytes();
+	}
+
+	return ret;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder();
+	for(RootMetrics root : roots) {
+	    sb.append(root).append('\n');
+	}
+
+	for(QueryMetrics query : queries.values()) {
+	    sb.append(query).append('\n');
+	}
+
+	return sb.toString();
+    }
+}
@@ -0,0 +1,519 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Immutable set of options controlling how a <code>ResourceScanner</code> or
+ * <code>ClassScanner</code> performs its scan.  Start with {@link #DEFAULT} and
+ * call the <code>with</code> methods to derive new options, each call returns a
+ * new instance and leaves the original untouched.
+ */
+public final class ScanOptions {
+
+    /**
+     * The options used by every scanner constructor that does not take a <code>ScanOptions</code>
+     */
+    public static final ScanOptions DEFAULT = new ScanOptions();
+
+    //JfrScanListener is compiled apart from the Java 8 API, see src/jfr. It is only
+    //created through reflection, so this class never links against jdk.jfr
+    private static final String JFR_LISTENER = "classpath.scan.JfrScanListener";
+    private static final boolean FLIGHT_RECORDER = hasClass("jdk.jfr.Event") && hasClass(JFR_LISTENER);
+
+    private static boolean hasClass(final String name) {
+	try {
+	    Class.forName(name, false, ScanOptions.class.getClassLoader());
+	    return true;
+	}
+	catch(ClassNotFoundException | LinkageError ex) {
+	    return false;
+	}
+    }
+
+    private final List<ScanListener> listeners;
+    private final ScanListener listener;
+    private final RootCache rootCache;
+    private final Executor executor;
+    private final boolean referenceIndex;
+    private final boolean resourceBloomFilter;
+    private final int nodeCacheMaxEntries;
+    private final long nodeCacheMaxBytes;
+    private final boolean softNodeCache;
+    private final boolean queryCache;
+    private final List<RootSource> rootSources;
+    private final boolean methodIndex;
+    private final boolean liveClasses;
+    private final int pipelineReaders;
+    private final int pipelineParsers;
+    private final long pipelineMaxBufferedBytes;
+    private final boolean annotationIndex;
+
+    private ScanOptions() {
+	this(Collections.<ScanListener>emptyList(), null, null, false, false, 0, 0L, false, false,
+	     Collections.<RootSource>singletonList(UrlRootSource.URL_CLASS_LOADERS), false, false, 0, 0, 0L, false);
+    }
+
+    private ScanOptions(final List<ScanListener> listeners, final RootCache rootCache,
+			final Executor executor, final boolean referenceIndex, final boolean resourceBloomFilter,
+			final int nodeCacheMaxEntries, final long nodeCacheMaxBytes, final boolean softNodeCache,
+			final boolean queryCache, final List<RootSource> rootSources, final boolean methodIndex,
+			final boolean liveClasses, final int pipelineReaders, final int pipelineParsers,
+			final long pipelineMaxBufferedBytes, final boolean annotationIndex) {
+	this.listeners = listeners;
+	this.listener = composite(listeners);
+	this.rootCache = rootCache;
+	this.executor = executor;
+	this.referenceIndex = referenceIndex;
+	this.resourceBloomFilter = resourceBloomFilter;
+	this.nodeCacheMaxEntries = nodeCacheMaxEntries;
+	this.nodeCacheMaxBytes = nodeCacheMaxBytes;
+	this.softNodeCache = softNodeCache;
+	this.queryCache = queryCache;
+	this.rootSources = rootSources;
+	this.methodIndex = methodIndex;
+	this.liveClasses = liveClasses;
+	this.pipelineReaders = pipelineReaders;
+	this.pipelineParsers = pipelineParsers;
+	this.pipelineMaxBufferedBytes = pipelineMaxBufferedBytes;
+	this.annotationIndex = annotationIndex;
+    }
+
+    private static ScanListener composite(final List<ScanListener> listeners) {
+	if(listeners.size() == 1) {
+	    return listeners.get(0);
+	}
+
+	return new ScanListener() {
+	    public void rootEnumerated(Root root, long nanos) {
+		for(ScanListener l : listeners) {
+		    l.rootEnumerated(root, nanos);
+		}
+	    }
+
+	    public void resourceRead(Root root, String resource, long bytes) {
+		for(ScanListener l : listeners) {
+		    l.resourceRead(root, resource, bytes);
+		}
+	    }
+
+	    public void classParsed(Root root, String resource, long nanos, long retainedBytes) {
+		for(ScanListener l : listeners) {
+		    l.classParsed(root, resource, nanos, retainedBytes);
+		}
+	    }
+
+	    public void queryCompleted(String query, int results, long nanos) {
+		for(ScanListener l : listeners) {
+		    l.queryCompleted(query, results, nanos);
+		}
+	    } };
+    }
+
+    /**
+     * @return The registered listeners, in registration order
+     */
+    public List<ScanListener> getListeners() {
+	return listeners;
+    }
+
+    /**
+     * Returns a single listener that forwards every event to all registered listeners.
+     */
+    ScanListener getListener() {
+	return listener;
+    }
+
+    /**
+     * @param listener The listener to add
+     * @return New options with <code>listener</code> added to the registered listeners
+     */
+    public ScanOptions withListener(final ScanListener listener) {
+	if(listener == null) {
+	    throw new NullPointerException("listener");
+	}
+
+	List<ScanListener> tmp = new ArrayList<>(listeners);
+	tmp.add(listener);
+	return new ScanOptions(Collections.unmodifiableList(tmp), rootCache, executor, referenceIndex,
+			       resourceBloomFilter, nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources,
+			       methodIndex, liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes,
+			       annotationIndex);
+    }
+
+    /**
+     * Registers a listener which emits JDK Flight Recorder events for root enumeration,
+     * class parsing, and queries.  The events are named <code>classpath.scan.RootEnumeration</code>,
+     * <code>classpath.scan.ClassParse</code>, and <code>classpath.scan.Query</code> and only
+     * cost anything when a recording has them enabled.  On JVMs without Flight Recorder
+     * this method returns the options unchanged.
+     *
+     * @return New options with the Flight Recorder listener registered
+     */
+    public ScanOptions withFlightRecorderEvents() {
+	return FLIGHT_RECORDER ? withListener(newListener(JFR_LISTENER)) : this;
+    }
+
+    private static ScanListener newListener(final String name) {
+	try {
+	    return (ScanListener) Class.forName(name).getDeclaredConstructor().newInstance();
+	}
+	catch(ReflectiveOperationException ex) {
+	    throw new RuntimeException(ex);
+	}
+    }
+
+    /**
+     * @return The cache of scanned root data this scanner shares with other scanners,
+     * or <code>null</code> if scanned data is not shared
+     */
+    public RootCache getRootCache() {
+	return rootCache;
+    }
+
+    /**
+     * Shares scanned root data with every other scanner using the same <code>RootCache</code>.
+     * Scanners that share a cache still apply their own prefixes and patterns, they only share
+     * the enumerated jar entries and the parsed classes.
+     *
+     * @param rootCache The cache to use, or <code>null</code> to stop sharing
+     * @return New options using <code>rootCache</code>
+     */
+    public ScanOptions withRootCache(final RootCache rootCache) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * Equivalent to calling <code>withRootCache(RootCache.shared())</code>
+     *
+     * @return New options using the process wide <code>RootCache</code>
+     */
+    public ScanOptions withSharedRootCache() {
+	return withRootCache(RootCache.shared());
+    }
+
+    /**
+     * @return The executor used to scan roots in parallel, or <code>null</code> if
+     * roots are scanned one at a time on the constructing thread
+     */
+    public Executor getExecutor() {
+	return executor;
+    }
+
+    /**
+     * Scans roots in parallel, one task per root, on <code>executor</code>.  The thread
+     * constructing the scanner also scans roots that the executor has not started yet,
+     * so any executor can be used, including a single threaded one or one that is
+     * already running the construction.  {@link AsyncClassScanner#defaultExecutor()}
+     * returns an executor using virtual threads where they are available.
+     *
+     * @param executor The executor to use, or <code>null</code> to scan on the constructing thread only
+     * @return New options using <code>executor</code>
+     */
+    public ScanOptions withExecutor(final Executor executor) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return Whether or not a <code>ClassScanner</code> builds a {@link ReferenceIndex}
+     */
+    public boolean isReferenceIndex() {
+	return referenceIndex;
+    }
+
+    /**
+     * Controls whether a <code>ClassScanner</code> builds a {@link ReferenceIndex} from the
+     * constant pools of the scanned classes.  The index is off by default.
+     *
+     * @param referenceIndex Whether or not to build the index
+     * @return New options building the index or not
+     */
+    public ScanOptions withReferenceIndex(final boolean referenceIndex) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return Whether or not the {@link ResourceIndex} of a scanner includes a Bloom filter
+     */
+    public boolean isResourceBloomFilter() {
+	return resourceBloomFilter;
+    }
+
+    /**
+     * Controls whether the {@link ResourceIndex} of a scanner includes a Bloom filter for
+     * quickly rejecting lookups of missing resources.  The filter is off by default.
+     *
+     * @param resourceBloomFilter Whether or not to build the filter
+     * @return New options building the filter or not
+     */
+    public ScanOptions withResourceBloomFilter(final boolean resourceBloomFilter) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return The maximum number of <code>ClassNode</code>s a <code>ClassScanner</code> keeps, 0 for no limit
+     */
+    public int getNodeCacheMaxEntries() {
+	return nodeCacheMaxEntries;
+    }
+
+    /**
+     * @return The estimated heap a <code>ClassScanner</code> may spend on <code>ClassNode</code>s, 0 for no limit
+     */
+    public long getNodeCacheMaxBytes() {
+	return nodeCacheMaxBytes;
+    }
+
+    /**
+     * Bounds the <code>ClassNode</code>s a <code>ClassScanner</code> keeps between queries.  When
+     * either limit is exceeded the least recently used nodes are evicted, and parsed again from
+     * their root the next time a query needs them.  Byte budgets are checked against an estimate
+     * of the heap retained by each node.  By default every node is kept for the life of the scanner.
+     *
+     * <p>Nodes shared through a {@link RootCache} are also held by that cache, so bounding the
+     * nodes of a scanner only saves memory when the scanner does not use one.
+     *
+     * @param maxEntries The maximum number of nodes to keep, 0 for no limit
+     * @param maxBytes The estimated heap to spend on nodes, 0 for no limit
+     * @return New options bounding the node cache
+     */
+    public ScanOptions withNodeCacheLimits(final int maxEntries, final long maxBytes) {
+	if(maxEntries < 0 || maxBytes < 0) {
+	    throw new IllegalArgumentException("limits must not be negative");
+	}
+
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter, maxEntries,
+			       maxBytes, softNodeCache, queryCache, rootSources, methodIndex, liveClasses, pipelineReaders,
+			       pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return Whether or not a <code>ClassScanner</code> holds its <code>ClassNode</code>s through <code>SoftReference</code>s
+     */
+    public boolean isSoftNodeCache() {
+	return softNodeCache;
+    }
+
+    /**
+     * Holds the <code>ClassNode</code>s of a <code>ClassScanner</code> through <code>SoftReference</code>s
+     * so the garbage collector can reclaim them when memory runs low.  Reclaimed nodes are parsed
+     * again from their root the next time a query needs them.  Takes precedence over
+     * {@link #withNodeCacheLimits(int, long)}.
+     *
+     * @param softNodeCache Whether or not to use soft references
+     * @return New options using soft references or not
+     */
+    public ScanOptions withSoftNodeCache(final boolean softNodeCache) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return Whether or not a <code>ClassScanner</code> memoizes the results of its queries
+     */
+    public boolean isQueryCache() {
+	return queryCache;
+    }
+
+    /**
+     * Memoizes the results of the finder methods of a <code>ClassScanner</code>, so repeated
+     * queries return the first result instead of matching every class again.  Concurrent
+     * identical queries are computed once, the other callers wait for that result.  Since a
+     * scanner never changes after construction the results never become stale, but they are
+     * kept until {@link ClassScanner#clearQueryCache()} is called.
+     *
+     * <p>The memoized results hold the classes, methods, and fields found, which were loaded
+     * through the classloaders of the scanned roots and so are already kept alive by the scanner.
+     * The types passed to the finders are only held weakly.  Keys passed to
+     * {@link ClassScanner#findNodeMatches(Object, ClassNodeMatcher)}, and custom results, are
+     * held until the cache is cleared.
+     *
+     * @param queryCache Whether or not to memoize query results
+     * @return New options memoizing query results or not
+     */
+    public ScanOptions withQueryCache(final boolean queryCache) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return The sources asked for roots, in order
+     */
+    public List<RootSource> getRootSources() {
+	return rootSources;
+    }
+
+    /**
+     * Adds a source of roots, asked after the sources already registered.  Roots are scanned
+     * in the order they are returned, so resources of earlier roots shadow those of later roots
+     * the same way they would on a classpath.  A <code>ClassScanner</code> only parses the first
+     * copy of a class.
+     *
+     * @param source The source to add
+     * @return New options also asking <code>source</code> for roots
+     */
+    public ScanOptions withRootSource(final RootSource source) {
+	if(source == null) {
+	    throw new NullPointerException("source");
+	}
+
+	List<RootSource> tmp = new ArrayList<>(rootSources);
+	tmp.add(source);
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache,
+			       Collections.unmodifiableList(tmp), methodIndex, liveClasses, pipelineReaders, pipelineParsers,
+			       pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * Stops scanning the directories and jars of the <code>URLClassLoader</code>s, so only the
+     * sources added with {@link #withRootSource(RootSource)} are scanned.
+     *
+     * @return New options without {@link UrlRootSource#URL_CLASS_LOADERS}
+     */
+    public ScanOptions withoutDefaultRootSource() {
+	List<RootSource> tmp = new ArrayList<>(rootSources);
+	tmp.remove(UrlRootSource.URL_CLASS_LOADERS);
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache,
+			       Collections.unmodifiableList(tmp), methodIndex, liveClasses, pipelineReaders, pipelineParsers,
+			       pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return Whether or not a <code>ClassScanner</code> builds a {@link MethodIndex}
+     */
+    public boolean isMethodIndex() {
+	return methodIndex;
+    }
+
+    /**
+     * Controls whether a <code>ClassScanner</code> builds a {@link MethodIndex} of the signatures
+     * of the scanned methods.  Off by default since the index keeps every method signature in memory.
+     *
+     * @param methodIndex Whether or not to build the index
+     * @return New options building the index or not
+     */
+    public ScanOptions withMethodIndex(final boolean methodIndex) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return Whether or not a <code>ClassScanner</code> parses classes captured by the {@link ScanAgent}
+     */
+    public boolean isLiveClasses() {
+	return liveClasses;
+    }
+
+    /**
+     * Controls whether a <code>ClassScanner</code> parses the bytes the {@link ScanAgent} captured
+     * when a class was loaded instead of reading the class from its root.  Off by default, has no
+     * effect unless the agent is running.  The agent forgets the classes the scanner parses, and
+     * captured classes are never stored in the {@link RootCache}, since other agents may have
+     * changed them.
+     *
+     * @param liveClasses Whether or not to use captured classes
+     * @return New options using captured classes or not
+     */
+    public ScanOptions withLiveClasses(final boolean liveClasses) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+
+    /**
+     * @return The number of tasks reading class files in a staged scan, 0 if the scan is not staged
+     */
+    public int getPipelineReaders() {
+	return pipelineReaders;
+    }
+
+    /**
+     * @return The number of tasks parsing class files in a staged scan, 0 if the scan is not staged
+     */
+    public int getPipelineParsers() {
+	return pipelineParsers;
+    }
+
+    /**
+     * @return The most class file bytes a staged scan buffers between reading and parsing, 0 if the scan is not staged
+     */
+    public long getPipelineMaxBufferedBytes() {
+	return pipelineMaxBufferedBytes;
+    }
+
+    /**
+     * Stages the scan of a <code>ClassScanner</code>: reader tasks read class files into a buffer
+     * while parser tasks parse and index the buffered classes, so slow disks and busy cores overlap
+     * instead of taking turns.  Readers stop once the buffer holds <code>maxBufferedBytes</code>
+     * until parsers catch up, which keeps the memory spent on raw class files fixed no matter how
+     * large the roots are.  Classes whose size a root cannot tell are counted once read, so the
+     * buffer may exceed the limit by one such class per reader.
+     *
+     * <p>Tasks run on the executor from {@link #withExecutor(Executor)}, or on
+     * {@link AsyncClassScanner#defaultExecutor()} if there is none.  The thread constructing the
+     * scanner runs tasks the executor has not started, and waiting readers parse buffered
+     * classes themselves, so any executor works, even one that never runs anything.  Only the
+     * class that wins when a class is in several roots is read.  By default scans are not staged.
+     *
+     * <p>Readers and parsers share the one executor rather than each getting their own: a
+     * reader that has to wait for parsers parses instead, so neither kind of task can starve
+     * the other, and the executor only needs <code>readers + parsers</code> threads to run the
+     * whole scan concurrently.  If a task fails the scan throws the first failure.
+     *
+     * @param readers The number of reader tasks, 0 to not stage the scan
+     * @param parsers The number of parser tasks
+     * @param maxBufferedBytes The most class file bytes to buffer
+     * @return New options staging the scan or not
+     */
+    public ScanOptions withPipeline(final int readers, final int parsers, final long maxBufferedBytes) {
+	if(readers < 0 || parsers < 0 || maxBufferedBytes < 0) {
+	    throw new IllegalArgumentException("pipeline limits must not be negative");
+	}
+
+	if(readers > 0 && (parsers == 0 || maxBufferedBytes == 0)) {
+	    throw new IllegalArgumentException("a pipeline needs parsers and a buffer");
+	}
+
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, readers, (readers == 0) ? 0 : parsers, (readers == 0) ? 0L : maxBufferedBytes,
+			       annotationIndex);
+    }
+
+    /**
+     * @return Whether or not a <code>ClassScanner</code> builds an {@link AnnotationIndex}
+     */
+    public boolean isAnnotationIndex() {
+	return annotationIndex;
+    }
+
+    /**
+     * Controls whether a <code>ClassScanner</code> builds an {@link AnnotationIndex} of the
+     * annotations and attribute values of the scanned types.  Off by default since the index
+     * keeps every annotation value in memory.  The <code>find...AnnotatedWith</code> methods
+     * of <code>ClassScanner</code> work either way.
+     *
+     * @param annotationIndex Whether or not to build the index
+     * @return New options building the index or not
+     */
+    public ScanOptions withAnnotationIndex(final boolean annotationIndex) {
+	return new ScanOptions(listeners, rootCache, executor, referenceIndex, resourceBloomFilter,
+			       nodeCacheMaxEntries, nodeCacheMaxBytes, softNodeCache, queryCache, rootSources, methodIndex,
+			       liveClasses, pipelineReaders, pipelineParsers, pipelineMaxBufferedBytes, annotationIndex);
+    }
+}
@@ -0,0 +1,289 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged scan of class files.  Internal to Classpath Scan, see {@link ScanOptions#withPipeline(int, int, long)}.
+ *
+ * <p>Reader tasks read raw class bytes into a queue, parser tasks take them from the queue,
+ * parse them, and hand the results over one at a time.  Before reading a class a reader takes
+ * permits for its size from a semaphore holding the byte budget, and the parser releases them
+ * once the class is parsed, so the bytes waiting in the queue never exceed the budget.  Sizes
+ * come from {@link Root#getSize(String)}, classes of unknown size are read first and counted
+ * afterwards, so each reader may briefly hold one such class beyond the budget.
+ *
+ * <p>A reader that cannot get permits parses queued classes itself while it waits.  That way
+ * the scan always makes progress, even when the executor runs fewer tasks than asked for, or
+ * none at all and the constructing thread has to run every task itself.
+ *
+ * <p>Classes the stages do not take from a root, because an earlier root shadows them, are
+ * never read.
+ *
+ * <p>The first task to fail stops the others.  Once every task has stopped the scan throws
+ * that first failure, with the failures it caused in the other tasks suppressed.
+ */
+final class ScanPipeline {
+
+    /**
+     * The work done for each class
+     */
+    interface Stages {
+	/**
+	 * @return Whether or not the class is taken from this root
+	 */
+	boolean provides(Root root, String resource);
+
+	/**
+	 * @return The class from a cache, or <code>null</code> if it has to be read and parsed
+	 */
+	ParsedClass cached(Root root, String resource);
+
+	byte[] read(Root root, String resource);
+
+	ParsedClass parse(Root root, String resource, byte[] bytes);
+
+	/**
+	 * Receives every class, never called concurrently
+	 */
+	void accept(Root root, String resource, ParsedClass parsed);
+    }
+
+    private static final class Item {
+	final Root root;
+	final String resource;
+	final byte[] bytes;
+	final int permits;
+
+	Item(final Root root, final String resource, final byte[] bytes, final int permits) {
+	    this.root = root;
+	    this.resource = resource;
+	    this.bytes = bytes;
+	    this.permits = permits;
+	}
+    }
+
+    private static final long POLL_MILLIS = 10L;
+
+    private final List<Root> roots;
+    private final int readers;
+    private final int parsers;
+    private final int maxPermits;
+    private final Executor executor;
+    private final Stages stages;
+
+    private final Semaphore budget;
+    private final BlockingQueue<Item> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger readersLeft;
+    private final Object acceptLock = new Object();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    //position of the next class to read, guarded by this
+    private int rootIndex = -1;
+    private Iterator<String> resources;
+
+    ScanPipeline(final List<Root> roots, final int readers, final int parsers, final long maxBytes,
+		 final Executor executor, final Stages stages) {
+	this.roots = roots;
+	this.readers = readers;
+	this.parsers = parsers;
+	this.maxPermits = (int) Math.min(maxBytes, Integer.MAX_VALUE);
+	this.executor = executor;
+	this.stages = stages;
+	this.budget = new Semaphore(maxPermits);
+	this.readersLeft = new AtomicInteger(readers);
+    }
+
+    void run() {
+	List<FutureTask<Void>> tasks = new ArrayList<>();
+	for(int i = 0; i < readers; ++i) {
+	    tasks.add(submit(new Callable<Void>() {
+		    public Void call() {
+			read();
+			return null;
+		    } }));
+	}
+
+	for(int i = 0; i < parsers; ++i) {
+	    tasks.add(submit(new Callable<Void>() {
+		    public Void call() {
+			parse();
+			return null;
+		    } }));
+	}
+
+	//run any task the executor has not started yet on this thread, that way
+	//waiting on the executor can never dead lock
+	List<Throwable> others = new ArrayList<>();
+	for(FutureTask<Void> task : tasks) {
+	    try {
+		task.run();
+		ResourceScanner.join(task);
+	    }
+	    catch(RuntimeException | Error ex) {
+		fail(ex);
+		if(ex != failure.get()) {
+		    others.add(ex);
+		}
+	    }
+	}
+
+	Throwable first = failure.get();
+	if(first != null) {
+	    for(Throwable other : others) {
+		first.addSuppressed(other);
+	    }
+
+	    if(first instanceof Error) {
+		throw (Error) first;
+	    }
+
+	    throw (RuntimeException) first;
+	}
+    }
+
+    /**
+     * Records the first failure, which stops the other tasks
+     */
+    private void fail(final Throwable ex) {
+	failure.compareAndSet(null, ex);
+    }
+
+    private boolean failed() {
+	return failure.get() != null;
+    }
+
+    private FutureTask<Void> submit(final Callable<Void> callable) {
+	FutureTask<Void> ret = new FutureTask<>(new Callable<Void>() {
+		public Void call() throws Exception {
+		    try {
+			return callable.call();
+		    }
+		    catch(RuntimeException | Error ex) {
+			fail(ex);
+			throw ex;
+		    }
+		} });
+	executor.execute(ret);
+	return ret;
+    }
+
+    /**
+     * @return The root and name of the next class to read, or <code>null</code> when every class has been handed out
+     */
+    private synchronized Object[] next() {
+	while(true) {
+	    while(resources == null || !resources.hasNext()) {
+		if(++rootIndex >= roots.size()) {
+		    return null;
+		}
+
+		resources = roots.get(rootIndex).getResources().iterator();
+	    }
+
+	    Root root = roots.get(rootIndex);
+	    String resource = resources.next();
+	    if(stages.provides(root, resource)) {
+		return new Object[] { root, resource };
+	    }
+	}
+    }
+
+    private void read() {
+	try {
+	    Object[] work;
+	    while(!failed() && (work = next()) != null) {
+		Root root = (Root) work[0];
+		String resource = (String) work[1];
+		ParsedClass cached = stages.cached(root, resource);
+		if(cached != null) {
+		    accept(root, resource, cached);
+		    continue;
+		}
+
+		long size = root.getSize(resource);
+		int permits = (size < 0) ? 0 : permits(size);
+		acquire(permits);
+		byte[] bytes = stages.read(root, resource);
+		if(size < 0) {
+		    permits = permits(bytes.length);
+		    acquire(permits);
+		}
+
+		queue.add(new Item(root, resource, bytes, permits));
+	    }
+	}
+	finally {
+	    readersLeft.decrementAndGet();
+	}
+    }
+
+    private int permits(final long bytes) {
+	//a class larger than the whole budget waits for the queue to drain completely
+	return (int) Math.max(1L, Math.min(bytes, maxPermits));
+    }
+
+    private void acquire(final int permits) {
+	try {
+	    while(!budget.tryAcquire(permits, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+		if(failed()) {
+		    throw new IllegalStateException("scan failed in another task");
+		}
+
+		//help the parsers instead of only waiting for them
+		Item item = queue.poll();
+		if(item != null) {
+		    parse(item);
+		}
+	    }
+	}
+	catch(InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(ex);
+	}
+    }
+
+    private void parse() {
+	try {
+	    while(!failed()) {
+		Item item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+		if(item != null) {
+		    parse(item);
+		}
+		else if(readersLeft.get() == 0 && queue.isEmpty()) {
+		    //readers add to the queue before they finish
+		    return;
+		}
+	    }
+	}
+	catch(InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    throw new RuntimeException(ex);
+	}
+    }
+
+    private void parse(final Item item) {
+	try {
+	    accept(item.root, item.resource, stages.parse(item.root, item.resource, item.bytes));
+	}
+	finally {
+	    budget.release(item.permits);
+	}
+    }
+
+    private void accept(final Root root, final String resource, final ParsedClass parsed) {
+	synchronized(acceptLock) {
+	    stages.accept(root, resource, parsed);
+	}
+    }
+}
@@ -0,0 +1,186 @@
+package classpath.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists every resource found in more than one root of a scanner, such as a class present
+ * in two versions of the same jar.  Retrieve one with {@link ResourceScanner#getShadowReport()}.
+ *
+ * <p>Contents are compared using only the sizes and CRC-32 checksums that are already known
+ * without reading the resources: jar entries take both from the zip central directory,
+ * files in directories only have their size from the file attributes.  Nothing is inflated
+ * or hashed while building a report.
+ */
+public final class ShadowReport {
+
+    /**
+     * The result of comparing the occurrences of a resource
+     */
+    public enum Comparison {
+	/**
+	 * Every occurrence has the same size and the same CRC-32
+	 */
+	IDENTICAL,
+
+	/**
+	 * At least two occurrences have different sizes or different CRC-32s
+	 */
+	DIFFERENT,
+
+	/**
+	 * Every occurrence has the same size, but at least one has no known CRC-32
+	 */
+	UNKNOWN
+    }
+
+    /**
+     * A single occurrence of a shadowed resource
+     */
+    public static final class Occurrence {
+	private final Root root;
+	private final long size;
+	private final long crc;
+
+	Occurrence(final Root root, final long size, final long crc) {
+	    this.root = root;
+	    this.size = size;
+	    this.crc = crc;
+	}
+
+	/**
+	 * @return The root containing the occurrence
+	 */
+	public Root getRoot() { return root; }
+
+	/**
+	 * @return The uncompressed size of the occurrence, -1 if unknown
+	 */
+	public long getSize() { return size; }
+
+	/**
+	 * @return The CRC-32 of the occurrence, -1 if unknown
+	 */
+	public long getCrc() { return crc; }
+
+	@Override
+	public String toString() {
+	    return String.format("%s (size=%d crc=%s)", root, size, (crc == -1L) ? "?" : Long.toHexString(crc));
+	}
+    }
+
+    /**
+     * A resource found in more than one root
+     */
+    public static final class Shadowed {
+	private final String resource;
+	private final List<Occurrence> occurrences;
+	private final Comparison comparison;
+
+	Shadowed(final String resource, final List<Occurrence> occurrences) {
+	    this.resource = resource;
+	    this.occurrences = Collections.unmodifiableList(occurrences);
+	    this.comparison = compare(occurrences);
+	}
+
+	private static Comparison compare(final List<Occurrence> occurrences) {
+	    long size = -1L;
+	    long crc = -1L;
+	    boolean allKnown = true;
+	    for(Occurrence occurrence : occurrences) {
+		if(occurrence.size == -1L) {
+		    allKnown = false;
+		}
+		else if(size == -1L) {
+		    size = occurrence.size;
+		}
+		else if(size != occurrence.size) {
+		    return Comparison.DIFFERENT;
+		}
+
+		if(occurrence.crc == -1L) {
+		    allKnown = false;
+		}
+		else if(crc == -1L) {
+		    crc = occurrence.crc;
+		}
+		else if(crc != occurrence.crc) {
+		    return Comparison.DIFFERENT;
+		}
+	    }
+
+	    return allKnown ? Comparison.IDENTICAL : Comparison.UNKNOWN;
+	}
+
+	/**
+	 * @return The name of the shadowed resource
+	 */
+	public String getResource() { return resource; }
+
+	/**
+	 * @return Every occurrence of the resource, in root order.  The first occurrence shadows the others,
+	 * it is the copy a <code>ClassScanner</code> parses and indexes.
+	 */
+	public List<Occurrence> getOccurrences() { return occurrences; }
+
+	/**
+	 * @return The result of comparing the contents of the occurrences
+	 */
+	public Comparison getComparison() { return comparison; }
+
+	@Override
+	public String toString() {
+	    return resource + " " + comparison + " " + occurrences;
+	}
+    }
+
+    private final List<Shadowed> shadowed;
+
+    ShadowReport(final Map<String,List<Root>> duplicates) {
+	List<Shadowed> tmp = new ArrayList<>();
+	for(Map.Entry<String,List<Root>> entry : duplicates.entrySet()) {
+	    String resource = entry.getKey();
+	    List<Occurrence> occurrences = new ArrayList<>();
+	    for(Root root : entry.getValue()) {
+		occurrences.add(new Occurrence(root, root.getSize(resource), root.getCrc(resource)));
+	    }
+
+	    tmp.add(new Shadowed(resource, occurrences));
+	}
+
+	this.shadowed = Collections.unmodifiableList(tmp);
+    }
+
+    /**
+     * @return Every resource found in more than one root, sorted by resource name
+     */
+    public List<Shadowed> getShadowed() {
+	return shadowed;
+    }
+
+    /**
+     * @return Every shadowed resource whose occurrences are known to differ
+     */
+    public List<Shadowed> getConflicts() {
+	List<Shadowed> ret = new ArrayList<>();
+	for(Shadowed s : shadowed) {
+	    if(s.getComparison() == Comparison.DIFFERENT) {
+		ret.add(s);
+	    }
+	}
+
+	return Collections.unmodifiableList(ret);
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder();
+	for(Shadowed s : shadowed) {
+	    sb.append(s).append('\n');
+	}
+
+	return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package classpath.scan;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * <code>RootSource</code> creating a <code>DirectoryRoot</code> or <code>JarRoot</code> for
+ * every <code>file:</code> URL.  URLs using other protocols and files which are not jars are skipped.
+ *
+ * <p>{@link #URL_CLASS_LOADERS} takes the URLs from every <code>URLClassLoader</code> between
+ * the scanned classloader and the bootstrap classloader.  Classloaders which are not
+ * <code>URLClassLoader</code>s can be adapted by passing their URLs to
+ * {@link #UrlRootSource(ClassLoader, Collection)}.
+ */
+public class UrlRootSource implements RootSource {
+
+    /**
+     * The default source, scanning the URLs of the scanned classloader and its ancestors
+     */
+    public static final UrlRootSource URL_CLASS_LOADERS = new UrlRootSource();
+
+    private final ClassLoader classLoader;
+    private final List<URL> urls;
+
+    private UrlRootSource() {
+	this.classLoader = null;
+	this.urls = null;
+    }
+
+    /**
+     * Adapts a classloader which is not a <code>URLClassLoader</code>, but loads its classes from known URLs.
+     *
+     * @param classLoader The classloader loading the classes found at <code>urls</code>
+     * @param urls The directories and jars to scan
+     */
+    public UrlRootSource(final ClassLoader classLoader, final Collection<URL> urls) {
+	this.classLoader = classLoader;
+	this.urls = Collections.unmodifiableList(new ArrayList<>(urls));
+    }
+
+    public List<Root> findRoots(final ClassLoader scanned, final List<String> prefixes, final List<Pattern> patterns,
+				final ScanOptions options) {
+	List<Root> ret = new ArrayList<>();
+	if(urls != null) {
+	    addRoots(classLoader, urls, prefixes, patterns, options, ret);
+	    return ret;
+	}
+
+	for(ClassLoader current = scanned; current != null; current = current.getParent()) {
+	    if(current instanceof URLClassLoader) {
+		addRoots(current, Arrays.asList(((URLClassLoader) current).getURLs()), prefixes, patterns, options, ret);
+	    }
+	}
+
+	return ret;
+    }
+
+    private static void addRoots(final ClassLoader classLoader, final List<URL> urls, final List<String> prefixes,
+				 final List<Pattern> patterns, final ScanOptions options, final List<Root> result) {
+	try {
+	    for(URL url : urls) {
+		if(url.getProtocol().equals("file")) {
+		    File asFile = new File(url.toURI());
+		    long start = System.nanoTime();
+		    Root root = null;
+		    if(asFile.isDirectory()) {
+			root = DirectoryRoot.factory(classLoader, asFile, prefixes, patterns);
+		    }
+		    else if(asFile.getName().endsWith("jar")) {
+			root = JarRoot.factory(classLoader, asFile, prefixes, patterns, options.getRootCache());
+		    }
+
+		    if(root != null) {
+			options.getListener().rootEnumerated(root, System.nanoTime() - start);
+			result.add(root);
+		    }
+		}
+	    }
+	}
+	catch(URISyntaxException e) {
+	    throw new RuntimeException(e);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return (urls == null) ? "URLClassLoaders" : urls.toString();
+    }
+}
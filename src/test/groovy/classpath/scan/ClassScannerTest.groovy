@@ -9,29 +9,31 @@ public class ClassScannerTest implements Cloneable {
   public String foo;
 
   private ClassLoader classLoader;
+  private ScanOptions defaults;
 
   @Before
   public void init() {
     classLoader = ClassScannerTest.getClassLoader();
+    defaults = TestRoots.options(classLoader);
   }
 
   @Test
   public void testFindDirectSubTypesOf() {
-    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[]);
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults);
     Set<Class> subs = scanner.findDirectSubTypesOf(Root);
     assert(subs.containsAll([ DirectoryRoot, JarRoot ]));
   }
 
   @Test
   public void testFindMethodsAnnotatedWith() {
-    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[]);
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults);
     Set methods = scanner.findMethodsAnnotatedWith(Before);
     assert(methods.size() >= 1);
   }
 
   @Test
   public void testFindFieldsAnnotatedWith() {
-    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], ~/.*ClassScannerTest\.class$/)
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [ ~/.*ClassScannerTest\.class$/ ] as java.util.regex.Pattern[], defaults)
     assert(scanner.roots.size() == 1);
     Root root = scanner.roots.iterator().next();
     assert(root.resources.size() == 1);
@@ -41,7 +43,7 @@ public class ClassScannerTest implements Cloneable {
   
   @Test
   public void testFindTypesAnnotatedWith() {
-    ClassScanner scanner = new ClassScanner(classLoader, 'classpath.scan')
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults)
     Set<Class> set = scanner.findTypesAnnotatedWith(Deprecated);
     assert(set.size() == 1);
     assert(this.getClass() == set.iterator().next());
@@ -49,7 +51,7 @@ public class ClassScannerTest implements Cloneable {
 
   @Test
   public void testFindDirectlyImplements() {
-    ClassScanner scanner = new ClassScanner(classLoader, 'classpath.scan')
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults)
     Set<Class> set = scanner.findDirectlyImplements(Cloneable);
     assert(set.size() == 1);
     assert(this.getClass() == set.iterator().next());
@@ -57,7 +59,7 @@ public class ClassScannerTest implements Cloneable {
 
   @Test
   public void testFindImplements() {
-    ClassScanner scanner = new ClassScanner(classLoader, 'classpath.scan')
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults)
     Set<Class> set = scanner.findImplements(SimpleInterface);
     Set<Class> shouldBe = [ TestA, TestB, SubTestA, SubTestAA ] as Set;
     assert(set == shouldBe);
@@ -66,7 +68,7 @@ public class ClassScannerTest implements Cloneable {
 
   @Test
   public void testFindSubTypesOf() {
-    ClassScanner scanner = new ClassScanner(classLoader, 'classpath.scan')
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults)
     Set<Class> set = scanner.findSubTypesOf(TestA);
     Set<Class> shouldBe = [ SubTestA, SubTestAA ] as Set;
     assert(set == shouldBe);
@@ -75,14 +77,416 @@ public class ClassScannerTest implements Cloneable {
 
   @Test
   public void testFindMethodsWithParameterAnnotation() {
-    ClassScanner scanner = new ClassScanner(classLoader, 'classpath.scan');
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults);
     Set methods = scanner.findMethodsWithParameterAnnotation(Deprecated);
     assert(methods);
     assert(methods.find { def method -> method.name == 'imBad' });
     assert(!methods.find { def method -> method.name == 'imGood' });
   }
+
+  @Test
+  public void testMetrics() {
+    MetricsListener listener = new MetricsListener();
+    ScanOptions options = defaults.withListener(listener).withFlightRecorderEvents();
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options);
+    scanner.findImplements(SimpleInterface);
+    ScanMetrics metrics = listener.metrics;
+    assert(metrics.roots.size() == scanner.roots.size());
+    assert(metrics.classesParsed == scanner.roots.sum { it.resources.size() });
+    assert(metrics.bytesRead > 0);
+    assert(metrics.retainedBytes > 0);
+    assert(metrics.queries["findImplements(${SimpleInterface.name})"].count == 1);
+    assert(metrics.queries["findDirectlyImplements(${SimpleInterface.name})"].count == 1);
+
+    //a second scan of equal roots adds to their counters
+    new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options);
+    assert(listener.metrics.roots.size() == scanner.roots.size());
+    assert(listener.metrics.classesParsed == 2 * metrics.classesParsed);
+
+    //another view of the same directories has its own counters
+    ClassScanner view = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [ ~/.*Test.*/ ] as java.util.regex.Pattern[], options);
+    assert(listener.metrics.roots.size() == scanner.roots.size() + view.roots.size());
+    assert(listener.metrics.roots.takeRight(view.roots.size())*.resources == view.roots*.resources*.size());
+  }
+
+  @Test
+  public void testMetricsOfInMemoryRoots() {
+    //same description and size, different resources
+    MetricsListener listener = new MetricsListener();
+    ScanOptions options = ScanOptions.DEFAULT.withoutDefaultRootSource().withListener(listener)
+      .withRootSource(InMemoryRoot.source(classLoader, InMemoryRoot.wrap([ 'a/A.class': generate('a/A', 'm', 'Ljava/lang/Deprecated;', 'classpath/scan/TestA') ])))
+      .withRootSource(InMemoryRoot.source(classLoader, InMemoryRoot.wrap([ 'b/B.class': generate('b/B', 'm', 'Ljava/lang/Deprecated;', 'classpath/scan/TestA') ])));
+    ClassScanner scanner = new ClassScanner(classLoader, null as String[], [] as java.util.regex.Pattern[], options);
+    assert(scanner.roots.size() == 2);
+    assert(scanner.roots[0].toString() == scanner.roots[1].toString());
+    assert(listener.metrics.roots.size() == 2);
+    assert(listener.metrics.roots*.classesParsed == [ 1, 1 ]);
+  }
+
+  @Test
+  public void testRootCache() {
+    RootCache cache = new RootCache(16);
+    ClassScanner first = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults.withRootCache(cache));
+    MetricsListener listener = new MetricsListener();
+    ClassScanner second = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [ ~/.*Test.*/ ] as java.util.regex.Pattern[],
+                                           defaults.withRootCache(cache).withListener(listener));
+    assert(cache.hits > 0);
+    assert(listener.metrics.classesParsed == 0);
+    assert(second.all.size() < first.all.size());
+    assert(second.findImplements(SimpleInterface) == first.findImplements(SimpleInterface));
+  }
+
+  @Test
+  public void testAsyncClassScanner() {
+    java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+    try {
+      AsyncClassScanner async = new AsyncClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                                      defaults.withExecutor(executor));
+      Set<Class> shouldBe = [ TestA, TestB, SubTestA, SubTestAA ] as Set;
+      assert(async.findImplements(SimpleInterface).get() == shouldBe);
+      assert(async.done);
+      assert(async.join().findSubTypesOf(TestA) == [ SubTestA, SubTestAA ] as Set);
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    AsyncClassScanner defaulted = new AsyncClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults);
+    assert(defaulted.join().findDirectlyImplements(Cloneable) == [ this.getClass() ] as Set);
+  }
+
+  @Test
+  public void testReferenceIndex() {
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                            defaults.withReferenceIndex(true));
+    ReferenceIndex index = scanner.referenceIndex;
+    assert(index.size() == scanner.all.size());
+    assert(index.findReferencesTo(RootCache).contains(ClassScanner.name));
+    assert(index.findReferencesTo(SubTestA).contains(SubTestAA.name));
+    assert(index.findMethodReferences(Root, 'getResources').contains(ClassScanner.name));
+    assert(index.findFieldReferences(ParsedClass, 'node').contains(ClassScanner.name));
+    assert(!index.findReferencesTo(ClassScanner).contains(ClassScanner.name));
+    assert(index.findReferencesTo('no.such.Type').isEmpty());
+  }
+
+  @Test(expected=IllegalStateException)
+  public void testReferenceIndexDisabled() {
+    new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults).referenceIndex;
+  }
+
+  @Test(expected=IllegalStateException)
+  public void testAnnotationIndexDisabled() {
+    new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults).annotationIndex;
+  }
+
+  @Test
+  public void testAnnotationIndex() {
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                            defaults.withAnnotationIndex(true));
+    AnnotationIndex index = scanner.annotationIndex;
+    assert(index.findTypesAnnotatedWith(Routed) == [ OrdersHandler.name, DefaultHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed, 'value', '/orders') == [ OrdersHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed, 'type', TestA) == [ OrdersHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed, 'methods', 'POST') == [ OrdersHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed, 'methods', [ 'GET', 'POST' ] as String[]) == [ OrdersHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed, 'policy', java.lang.annotation.RetentionPolicy.SOURCE) == [ OrdersHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed, 'priority', 5) == [ OrdersHandler.name ] as Set);
+    //defaults are only matched when the annotation type is known
+    assert(index.findTypesAnnotatedWith(Routed, 'value', '/') == [ DefaultHandler.name ] as Set);
+    assert(index.findTypesAnnotatedWith(Routed.name, 'value', '/').isEmpty());
+    assert(index.findTypesAnnotatedWith(Routed, 'value', '/missing').isEmpty());
+
+    Map attributes = index.getAttributes(OrdersHandler.name, Routed);
+    assert(attributes.value == '/orders');
+    assert(attributes.type == new AnnotationIndex.ClassValue(TestA.name));
+    assert(attributes.type.name == TestA.name);
+    assert(attributes.methods == [ 'GET', 'POST' ]);
+    assert(attributes.policy.name == 'SOURCE');
+    assert(index.getAttributes(TestA.name, Routed) == null);
+  }
+
+  @Test
+  public void testBoundedNodeCache() {
+    ClassScanner unbounded = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults);
+    ClassScanner bounded = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [] as java.util.regex.Pattern[],
+                                            defaults.withNodeCacheLimits(2, 0L));
+    assert(bounded.nodeCacheStats.size == 2);
+    assert(bounded.nodeCacheStats.evictions > 0);
+    assert(bounded.findSubTypesOf(TestA) == unbounded.findSubTypesOf(TestA));
+    assert(bounded.findTypesAnnotatedWith(Routed) == unbounded.findTypesAnnotatedWith(Routed));
+    assert(bounded.nodeCacheStats.misses > 0);
+    assert(bounded.nodeCacheStats.size == 2);
+    assert(unbounded.nodeCacheStats.misses == 0);
+
+    ClassScanner soft = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [] as java.util.regex.Pattern[],
+                                         defaults.withSoftNodeCache(true));
+    assert(soft.findImplements(SimpleInterface) == unbounded.findImplements(SimpleInterface));
+  }
+
+  @Test
+  public void testQueryCache() {
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [] as java.util.regex.Pattern[],
+                                            defaults.withQueryCache(true));
+    assert(scanner.findImplements(SimpleInterface).is(scanner.findImplements(SimpleInterface)));
+    assert(scanner.findImplements(SimpleInterface) == new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults).findImplements(SimpleInterface));
+
+    java.util.concurrent.atomic.AtomicInteger calls = new java.util.concurrent.atomic.AtomicInteger();
+    java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+    ClassNodeMatcher<String> matcher = new ClassNodeMatcher<String>() {
+      public Set<String> matches(ClassLoader cl, classpath.scan.jarjar.tree.ClassNode node) {
+        calls.incrementAndGet();
+        return [ node.name ] as Set;
+      }
+    };
+
+    List<Thread> threads = (1..8).collect { Thread.start { latch.await(); scanner.findNodeMatches('all', matcher); } };
+    latch.countDown();
+    threads*.join();
+    int size = scanner.findNodeMatches('all', matcher).size();
+    assert(calls.get() == size);
+
+    scanner.clearQueryCache();
+    scanner.findNodeMatches('all', matcher);
+    assert(calls.get() == 2 * size);
+  }
+
+  @Test
+  public void testQueryCacheKeysByClass() {
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [] as java.util.regex.Pattern[],
+                                            defaults.withQueryCache(true));
+    //a copy of @Before from another classloader shares its name but annotates nothing here
+    URL junit = Before.protectionDomain.codeSource.location;
+    URLClassLoader other = new URLClassLoader([ junit ] as URL[], (ClassLoader) null);
+    Class before = other.loadClass(Before.name);
+    assert(!before.is(Before));
+    assert(!scanner.findMethodsAnnotatedWith(Before).isEmpty());
+    assert(scanner.findMethodsAnnotatedWith(before).isEmpty());
+    assert(scanner.findMethodsAnnotatedWith(Before).is(scanner.findMethodsAnnotatedWith(Before)));
+    other.close();
+  }
+
+  @Test
+  public void testFindNodeMatchesInParallel() {
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults);
+    ClassNodeMatcher<String> matcher = new ClassNodeMatcher<String>() {
+      public Set<String> matches(ClassLoader cl, classpath.scan.jarjar.tree.ClassNode node) {
+        return [ node.name ] as Set;
+      }
+    };
+
+    assert(scanner.findNodeMatchesInParallel(matcher) == scanner.findNodeMatches(matcher));
+  }
+
+  @Test
+  public void testInMemoryRoot() {
+    Map<String,byte[]> contents = [:];
+    [ TestA, SubTestA, TestB ].each { Class type ->
+      String resource = type.name.replace('.', '/') + '.class';
+      contents[resource] = classLoader.getResourceAsStream(resource).bytes;
+    }
+
+    ScanOptions options = ScanOptions.DEFAULT.withoutDefaultRootSource().withRootSource(InMemoryRoot.source(classLoader, InMemoryRoot.wrap(contents)));
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [] as java.util.regex.Pattern[], options);
+    assert(scanner.roots.size() == 1);
+    assert(scanner.roots[0] instanceof InMemoryRoot);
+    assert(scanner.all == contents.keySet());
+    assert(scanner.findDirectSubTypesOf(TestA) == [ SubTestA ] as Set);
+    assert(scanner.findDirectlyImplements(SimpleInterface) == [ TestA, TestB ] as Set);
+    assert(scanner.roots[0].getCrc('classpath/scan/TestA.class') != -1L);
+
+    ClassScanner none = new ClassScanner(classLoader, [ 'org.junit' ] as String[], [] as java.util.regex.Pattern[], options);
+    assert(none.roots.isEmpty());
+  }
+
+  @Test
+  public void testMethodIndex() {
+    ClassScanner scanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], [] as java.util.regex.Pattern[],
+                                            defaults.withMethodIndex(true));
+    MethodIndex index = scanner.methodIndex;
+    List<MethodDescriptor> found = index.find(MethodPattern.ANY.withReturnType(TestA).withParameterTypes(String, int[]));
+    assert(found.size() == 1);
+    assert(found[0].owner == Wiring.name);
+    assert(found[0].name == 'create');
+    assert(found[0].parameterTypes == [ 'java.lang.String', 'int[]' ]);
+    assert(found[0].descriptor == '(Ljava/lang/String;[I)Lclasspath/scan/TestA;');
+
+    int publicStatic = java.lang.reflect.Modifier.PUBLIC | java.lang.reflect.Modifier.STATIC;
+    assert(index.find(MethodPattern.ANY.withModifiers(publicStatic).withParameterType(TestA)).collect { it.name } == [ 'handle' ]);
+    assert(index.find(MethodPattern.ANY.withParameterType(TestA)).collect { it.name } as Set == [ 'handle', 'handleLater' ] as Set);
+    assert(index.find(MethodPattern.ANY.withName('handleLater').withParameterTypes()).isEmpty());
+    assert(index.find(MethodPattern.ANY.withReturnType('no.such.Type')).isEmpty());
+    assert(index.find(MethodPattern.ANY.withReturnType('void').withName('handle')).size() == 1);
+  }
+
+  @Test(expected=IllegalStateException)
+  public void testMethodIndexDisabled() {
+    new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults).methodIndex;
+  }
+
+  @Test
+  public void testScanAgent() {
+    byte[] bytes = classLoader.getResourceAsStream('classpath/scan/TestA.class').bytes;
+    assert(ScanAgent.prefixes(' classpath.scan, org.junit ') == [ 'classpath/scan', 'org/junit' ]);
+    try {
+      //without packages nothing is captured
+      assert(ScanAgent.transformer('').transform(classLoader, 'classpath/scan/TestA', null, null, bytes) == null);
+      assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/TestA.class') == null);
+
+      //fed directly, as the JVM would when TestA is defined
+      assert(ScanAgent.transformer('classpath.scan').transform(classLoader, 'classpath/scan/TestA', null, null, bytes) == null);
+      MetricsListener live = new MetricsListener();
+      MetricsListener read = new MetricsListener();
+      ClassScanner liveScanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                                  defaults.withListener(live).withLiveClasses(true));
+      new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, defaults.withListener(read));
+      assert(live.metrics.bytesRead == read.metrics.bytesRead - bytes.length);
+      assert(live.metrics.classesParsed == read.metrics.classesParsed);
+      assert(liveScanner.findDirectSubTypesOf(TestA) == [ SubTestA ] as Set);
+      //dropped once parsed
+      assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/TestA.class') == null);
+
+      //captured classes are not stored in the root cache, so a scan not using them reads them
+      for(ScanOptions options : [ defaults, defaults.withPipeline(2, 2, 1L << 20) ]) {
+        RootCache cache = new RootCache(16);
+        ScanAgent.transformer('classpath.scan').transform(classLoader, 'classpath/scan/TestA', null, null, bytes);
+        new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options.withRootCache(cache).withLiveClasses(true));
+        assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/TestA.class') == null);
+        MetricsListener cached = new MetricsListener();
+        new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options.withRootCache(cache).withListener(cached));
+        assert(cached.metrics.bytesRead == bytes.length);
+      }
+    }
+    finally {
+      ScanAgent.release();
+    }
+
+    assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/TestA.class') == null);
+  }
+
+  @Test
+  public void testPipeline() {
+    ClassScanner plain = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                          defaults.withReferenceIndex(true));
+    MetricsListener listener = new MetricsListener();
+    //a one byte buffer forces readers to wait on, and help, the parsers for every class
+    ScanOptions options = defaults.withReferenceIndex(true).withPipeline(2, 2, 1L);
+    ClassScanner staged = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options.withListener(listener));
+    assert(listener.metrics.classesParsed == staged.resourceIndex.size());
+    assert(staged.all == plain.all);
+    assert(staged.findImplements(SimpleInterface) == plain.findImplements(SimpleInterface));
+    assert(staged.referenceIndex.findReferencesTo(TestA) == plain.referenceIndex.findReferencesTo(TestA));
+
+    //an executor that never runs anything leaves every task to the constructing thread
+    java.util.concurrent.Executor idle = { Runnable r -> } as java.util.concurrent.Executor;
+    ClassScanner inline = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options.withExecutor(idle));
+    assert(inline.findSubTypesOf(TestA) == [ SubTestA, SubTestAA ] as Set);
+
+    RootCache cache = new RootCache(16);
+    new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options.withRootCache(cache));
+    MetricsListener cached = new MetricsListener();
+    new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null, options.withRootCache(cache).withListener(cached));
+    assert(cached.metrics.classesParsed == 0);
+  }
+
+  @Test
+  public void testPipelineFailure() {
+    Map<String,byte[]> classes = [:];
+    20.times { int i -> classes["fail/C${i}.class".toString()] = generate("fail/C${i}", 'm', 'Ljava/lang/Deprecated;', 'classpath/scan/TestA') };
+    InMemoryRoot root = new InMemoryRoot(classLoader, InMemoryRoot.wrap(classes)) {
+      public byte[] readBytes(String resource) {
+        if(resource == 'fail/C10.class') {
+          throw new UnsupportedOperationException('unreadable');
+        }
+        return super.readBytes(resource);
+      }
+    };
+    RootSource source = { ClassLoader cl, List<String> prefixes, List<java.util.regex.Pattern> patterns, ScanOptions options -> [ root ] } as RootSource;
+    java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+    try {
+      //the other tasks stop with an IllegalStateException, the read failure is thrown
+      new ClassScanner(classLoader, [ 'fail' ] as String[], [] as java.util.regex.Pattern[],
+                       ScanOptions.DEFAULT.withoutDefaultRootSource().withRootSource(source).withExecutor(executor).withPipeline(2, 2, 1L));
+      assert(false);
+    }
+    catch(UnsupportedOperationException ex) {
+      assert(ex.message == 'unreadable');
+      assert(ex.suppressed.every { it instanceof IllegalStateException });
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected=IllegalArgumentException)
+  public void testPipelineWithoutBuffer() {
+    ScanOptions.DEFAULT.withPipeline(1, 1, 0L);
+  }
+
+  //a class the test classloader can not load, so only its scanned copies exist
+  private static byte[] generate(String name, String method, String annotation, String referenced) {
+    classpath.scan.jarjar.ClassWriter writer = new classpath.scan.jarjar.ClassWriter(0);
+    writer.visit(classpath.scan.jarjar.Opcodes.V1_8, classpath.scan.jarjar.Opcodes.ACC_PUBLIC, name, null, 'java/lang/Object', null);
+    writer.visitAnnotation(annotation, true).visitEnd();
+    classpath.scan.jarjar.MethodVisitor visitor = writer.visitMethod(classpath.scan.jarjar.Opcodes.ACC_PUBLIC, method, '()V', null, null);
+    visitor.visitCode();
+    visitor.visitLdcInsn(classpath.scan.jarjar.Type.getObjectType(referenced));
+    visitor.visitInsn(classpath.scan.jarjar.Opcodes.POP);
+    visitor.visitInsn(classpath.scan.jarjar.Opcodes.RETURN);
+    visitor.visitMaxs(1, 1);
+    visitor.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private ClassScanner duplicated(ScanOptions options) {
+    Map<String,byte[]> first = [ 'dup/Dup.class': generate('dup/Dup', 'first', 'Ljava/lang/Deprecated;', 'classpath/scan/TestA') ];
+    Map<String,byte[]> second = [ 'dup/Dup.class': generate('dup/Dup', 'second', 'Ljava/lang/FunctionalInterface;', 'classpath/scan/TestB'),
+                                  'dup/Unique.class': generate('dup/Unique', 'unique', 'Ljava/lang/Deprecated;', 'classpath/scan/TestA') ];
+    options = options.withoutDefaultRootSource().withReferenceIndex(true).withMethodIndex(true).withAnnotationIndex(true)
+      .withRootSource(InMemoryRoot.source(classLoader, InMemoryRoot.wrap(first)))
+      .withRootSource(InMemoryRoot.source(classLoader, InMemoryRoot.wrap(second)));
+    return new ClassScanner(classLoader, [ 'dup' ] as String[], [] as java.util.regex.Pattern[], options);
+  }
+
+  @Test
+  public void testShadowedClassesInEveryMode() {
+    java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(2);
+    try {
+      List<ScanOptions> modes = [ ScanOptions.DEFAULT, ScanOptions.DEFAULT.withExecutor(executor),
+                                  ScanOptions.DEFAULT.withPipeline(2, 2, 1L), ScanOptions.DEFAULT.withNodeCacheLimits(1, 0L) ];
+      ClassNodeMatcher<String> methods = new ClassNodeMatcher<String>() {
+        public Set<String> matches(ClassLoader cl, classpath.scan.jarjar.tree.ClassNode node) {
+          return node.methods*.name as Set;
+        }
+      };
+
+      modes.each { ScanOptions mode ->
+        MetricsListener listener = new MetricsListener();
+        ClassScanner scanner = duplicated(mode.withListener(listener));
+        assert(scanner.roots.size() == 2);
+        //the report, the resource index and the scanner agree on the copy that wins
+        assert(scanner.shadowReport.shadowed*.resource == [ 'dup/Dup.class' ]);
+        assert(scanner.shadowReport.shadowed[0].occurrences[0].root.is(scanner.roots[0]));
+        assert(scanner.resourceIndex.find('dup/Dup.class').is(scanner.roots[0]));
+        //the second copy of dup/Dup is never parsed, only dup/Unique is
+        assert(listener.metrics.classesParsed == 2);
+        assert(scanner.findNodeMatches(methods) == [ 'first', 'unique' ] as Set);
+        assert(scanner.annotationIndex.findTypesAnnotatedWith(Deprecated) == [ 'dup.Dup', 'dup.Unique' ] as Set);
+        assert(scanner.annotationIndex.findTypesAnnotatedWith(FunctionalInterface).isEmpty());
+        assert(scanner.referenceIndex.size() == scanner.all.size());
+        assert(scanner.referenceIndex.findReferencesTo(TestA) == [ 'dup.Dup', 'dup.Unique' ] as Set);
+        assert(scanner.referenceIndex.findReferencesTo(TestB).isEmpty());
+        assert(scanner.methodIndex.find(MethodPattern.ANY.withName('first'))*.owner == [ 'dup.Dup' ]);
+        assert(scanner.methodIndex.find(MethodPattern.ANY.withName('second')).isEmpty());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
 }
 
+
 interface SimpleInterface { }
 
 class TestA implements SimpleInterface { }
@@ -98,4 +502,25 @@ class IHaveDeprecatedMethodParameters {
   public void imGood(String foo) { }
 
   public void imBad(@Deprecated String foo) { }
-}
\ No newline at end of file
+}
+
+@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)
+@interface Routed {
+  String value() default '/';
+  Class type() default Object;
+  String[] methods() default [];
+  java.lang.annotation.RetentionPolicy policy() default java.lang.annotation.RetentionPolicy.RUNTIME;
+  int priority() default 0;
+}
+
+@Routed(value='/orders', type=TestA, methods=[ 'GET', 'POST' ], policy=java.lang.annotation.RetentionPolicy.SOURCE, priority=5)
+class OrdersHandler { }
+
+@Routed
+class DefaultHandler { }
+
+class Wiring {
+  public TestA create(String name, int[] sizes) { return null; }
+  public static void handle(TestA a, String name) { }
+  public void handleLater(TestA a) { }
+}
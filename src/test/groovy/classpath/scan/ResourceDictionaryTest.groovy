@@ -0,0 +1,84 @@
+package classpath.scan;
+
+import org.junit.*;
+
+public class ResourceDictionaryTest {
+
+  private TreeSet<String> expected;
+  private ResourceDictionary dictionary;
+
+  @Before
+  public void init() {
+    Random random = new Random(42);
+    expected = new TreeSet<>();
+    List<String> packages = [ 'com/foo/', 'com/foo/bar/', 'org/other/stuff/', 'org/other/', 'images/', 'café/' ];
+    200.times { int i ->
+      expected.add(packages[random.nextInt(packages.size())] + 'Name' + random.nextInt(1000) + '.class');
+    }
+
+    expected.add('config.properties');
+    dictionary = ResourceDictionary.of(expected);
+  }
+
+  @Test
+  public void testMatchesTreeSet() {
+    assert(dictionary.size() == expected.size());
+    assert(dictionary as List == expected as List);
+    assert(dictionary == expected);
+    assert(expected == dictionary);
+    assert(dictionary.hashCode() == expected.hashCode());
+    assert(dictionary.first() == expected.first());
+    assert(dictionary.last() == expected.last());
+    assert(expected.every { dictionary.contains(it) });
+    assert(!dictionary.contains('com/foo/Missing.class'));
+    assert(!dictionary.contains('zzz'));
+    assert(!dictionary.contains(''));
+  }
+
+  @Test
+  public void testRanges() {
+    List<String> keys = [ '', 'com/', 'com/foo/', 'com/foo/Name5', 'org/other/stuff/', 'zzz' ] + (expected as List).subList(10, 20);
+    for(String a : keys) {
+      assert(dictionary.tailSet(a) as List == expected.tailSet(a) as List);
+      assert(dictionary.headSet(a) as List == expected.headSet(a) as List);
+      for(String b : keys) {
+        if(a <= b) {
+          assert(dictionary.subSet(a, b) as List == expected.subSet(a, b) as List);
+          assert(dictionary.tailSet(a).headSet(b) as List == expected.tailSet(a).headSet(b) as List);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPrefixes() {
+    for(String prefix : [ 'com/foo/', 'com/foo/bar/', 'org/', 'café/', 'images/', 'nothing/', '' ]) {
+      assert(dictionary.withPrefix(prefix) as List == expected.findAll { it.startsWith(prefix) } as List);
+    }
+  }
+
+  @Test
+  public void testStringOrder() {
+    //lookups compare encoded entries in String order, where a character outside the
+    //basic plane sorts by its surrogates, before U+FFFD, unlike in UTF-8 byte order
+    TreeSet<String> names = new TreeSet<>([ 'a/\uFFFD.class', 'a/\uD83D\uDE00.class', 'a/\u00E9.class', 'a/z.class', 'a/\uFFFD\uD83D\uDE00.class' ]);
+    ResourceDictionary dict = ResourceDictionary.of(names);
+    assert(dict as List == names as List);
+    assert(names.every { dict.contains(it) });
+    for(String key : names + [ 'a/', 'a/\uD83D', 'a/\uFFFD', 'a/\uFFFE', 'b' ]) {
+      assert(dict.tailSet(key) as List == names.tailSet(key) as List);
+      assert(dict.contains(key) == names.contains(key));
+    }
+  }
+
+  @Test
+  public void testUnsortedInput() {
+    assert(ResourceDictionary.of([ 'b', 'a', 'c', 'a' ]) as List == [ 'a', 'b', 'c' ]);
+    assert(ResourceDictionary.of([]).isEmpty());
+  }
+
+  @Test(expected=UnsupportedOperationException)
+  public void testImmutable() {
+    dictionary.add('foo');
+  }
+}
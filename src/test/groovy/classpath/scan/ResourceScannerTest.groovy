@@ -5,28 +5,124 @@ import org.junit.*;
 public class ResourceScannerTest {
 
   private ClassLoader loader;
+  private ScanOptions defaults;
 
   @Before
   public void init() {
     loader = ResourceScannerTest.classLoader;
+    defaults = TestRoots.options(loader);
   }
 
   @Test
   public void testFindOrgJunitClasses() {
-    ResourceScanner scanner = new ResourceScanner(loader, 'org/junit');
+    ResourceScanner scanner = new ResourceScanner(loader, [ 'org/junit' ] as String[], null, defaults);
     assert(scanner.all.find { it.endsWith('Test.class'); });
   }
 
   @Test
   public void testPatternJunitClasses() {
-    ResourceScanner scanner = new ResourceScanner(loader, ['org/junit'] as String[], ~/org\/junit\/Test\.class/);
+    ResourceScanner scanner = new ResourceScanner(loader, ['org/junit'] as String[], [ ~/org\/junit\/Test\.class/ ] as java.util.regex.Pattern[], defaults);
     assert(scanner.all.size() == 1);
   }
 
   @Test
   public void testGenericJunitClasses() {
-    ResourceScanner scanner = new ResourceScanner();
+    ResourceScanner scanner = new ResourceScanner(null, null as String[], null as java.util.regex.Pattern[], defaults);
     Set<String> found = scanner.findMatches(~/org\/junit\/Test\.class/);
     assert(found.size() == 1);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testRootCacheJarNames() {
+    RootCache cache = new RootCache(16);
+    ScanOptions options = defaults.withRootCache(cache);
+    ResourceScanner all = new ResourceScanner(loader, ['org/junit'] as String[], null, options);
+    long misses = cache.misses;
+    ResourceScanner some = new ResourceScanner(loader, ['org/junit'] as String[], [ ~/.*Test\.class/ ] as java.util.regex.Pattern[], options);
+    assert(cache.misses == misses);
+    assert(cache.hits > 0);
+    assert(some.all == all.all.findAll { it.endsWith('Test.class') } as Set);
+  }
+
+  @Test
+  public void testResourceIndex() {
+    ResourceScanner scanner = new ResourceScanner(loader, ['org/junit'] as String[], null,
+                                                  defaults.withResourceBloomFilter(true));
+    ResourceIndex index = scanner.resourceIndex;
+    assert(index.is(scanner.resourceIndex));
+    assert(index.hasBloomFilter());
+    assert(index.size() == scanner.all.size());
+    assert(scanner.all.every { index.mightContain(it) && index.contains(it) });
+    assert(index.find('org/junit/Test.class').has('org/junit/Test.class'));
+    assert(index.findAll('org/junit/Test.class').size() == 1);
+    assert(index.withStream('org/junit/Test.class', { it.read() } as ProcessInputStream) == 0xCA);
+    assert(!index.contains('org/junit/NoSuchThing.class'));
+    assert(index.find('org/junit/NoSuchThing.class') == null);
+    assert(index.findAll('org/junit/NoSuchThing.class').isEmpty());
+    assert((0..<1000).count { index.mightContain("no/such/Resource${it}.class") } < 100);
+  }
+
+  @Test
+  public void testShadowReport() {
+    ResourceScanner scanner = new ResourceScanner(loader, null as String[], [ ~/META-INF\/MANIFEST\.MF/ ] as java.util.regex.Pattern[], defaults);
+    ShadowReport report = scanner.shadowReport;
+    assert(report.shadowed.size() == 1);
+    ShadowReport.Shadowed manifest = report.shadowed[0];
+    assert(manifest.resource == 'META-INF/MANIFEST.MF');
+    assert(manifest.occurrences*.root == scanner.roots);
+    assert(manifest.occurrences.every { it.size > 0 && it.crc != -1L });
+    assert(manifest.comparison == ShadowReport.Comparison.DIFFERENT);
+    assert(report.conflicts == [ manifest ]);
+
+    ResourceScanner junit = new ResourceScanner(loader, ['org/junit'] as String[], null, defaults);
+    assert(junit.shadowReport.shadowed.isEmpty());
+  }
+
+  @Test
+  public void testUrlRootSource() {
+    ResourceScanner standard = new ResourceScanner(loader, ['org/junit'] as String[], null, defaults);
+    List<URL> urls = TestRoots.urls(loader);
+
+    //adapts the urls as if they came from a loader which is not a URLClassLoader
+    ScanOptions options = ScanOptions.DEFAULT.withoutDefaultRootSource().withRootSource(new UrlRootSource(loader, urls));
+    ResourceScanner adapted = new ResourceScanner(loader, ['org/junit'] as String[], null, options);
+    assert(adapted.all == standard.all);
+    assert(ScanOptions.DEFAULT.rootSources == [ UrlRootSource.URL_CLASS_LOADERS ]);
+    assert(new ResourceScanner(loader, ['org/junit'] as String[], null, ScanOptions.DEFAULT.withoutDefaultRootSource()).roots.isEmpty());
+  }
+
+  private static RootSource memory(Map<String,String> contents) {
+    return InMemoryRoot.source(ResourceScannerTest.classLoader, InMemoryRoot.wrap(contents.collectEntries { k, v -> [ k, v.getBytes('UTF-8') ] }));
+  }
+
+  @Test
+  public void testServiceIndex() {
+    ScanOptions options = ScanOptions.DEFAULT.withoutDefaultRootSource()
+      .withRootSource(memory([ 'META-INF/services/com.foo.Codec': 'com.foo.JsonCodec\n# comment\n\ncom.foo.XmlCodec # trailing\n',
+                               'META-INF/factories': 'com.foo.Listener=com.foo.A,\\\n  com.foo.B\n!ignored=x\n' ]))
+      .withRootSource(memory([ 'META-INF/services/com.foo.Codec': 'com.foo.YamlCodec\ncom.foo.JsonCodec\n',
+                               'META-INF/services/com.foo.Other': 'com.foo.OtherImpl',
+                               'com/foo/Unrelated.txt': 'com.foo.Nope' ]));
+    ResourceScanner scanner = new ResourceScanner(loader, null as String[], null as java.util.regex.Pattern[], options);
+
+    Map<String,List<Integer>> sizes = scanner.readMatches({ it.startsWith('META-INF/services/') } as ResourceMatcher,
+                                                          { it.bytes.length } as ProcessInputStream);
+    assert(sizes.keySet() == [ 'META-INF/services/com.foo.Codec', 'META-INF/services/com.foo.Other' ] as Set);
+    assert(sizes['META-INF/services/com.foo.Codec'].size() == 2);
+
+    DescriptorIndex services = scanner.serviceIndex;
+    assert(services.get('com.foo.Codec') == [ 'com.foo.JsonCodec', 'com.foo.XmlCodec', 'com.foo.YamlCodec' ]);
+    assert(services.get('com.foo.Other') == [ 'com.foo.OtherImpl' ]);
+    assert(services.get('com.foo.Missing').isEmpty());
+    assert(services.keys == [ 'com.foo.Codec', 'com.foo.Other' ] as Set);
+    assert(scanner.serviceIndex.is(services));
+
+    DescriptorIndex factories = scanner.getDescriptorIndex('META-INF/factories', DescriptorIndex.KEY_VALUES);
+    assert(factories.asMap() == [ 'com.foo.Listener': [ 'com.foo.A', 'com.foo.B' ] ]);
+    assert(scanner.getDescriptorIndex('META-INF/factories', DescriptorIndex.KEY_VALUES).is(factories));
+
+    scanner.clearDescriptorIndexes();
+    assert(!scanner.serviceIndex.is(services));
+    assert(scanner.serviceIndex.asMap() == services.asMap());
+  }
+}
@@ -0,0 +1,45 @@
+package classpath.scan;
+
+import org.junit.*;
+
+/**
+ * Only runs in a JVM started with the agent, see the agentTest task
+ */
+public class ScanAgentTest {
+
+  private ClassLoader classLoader;
+  private ScanOptions options;
+
+  @Before
+  public void init() {
+    Assume.assumeTrue(ScanAgent.isInstalled());
+    classLoader = ScanAgentTest.classLoader;
+    //only the main classes, so the test classes stay captured
+    List<URL> urls = [ ClassScanner.protectionDomain.codeSource.location ];
+    options = ScanOptions.DEFAULT.withoutDefaultRootSource().withRootSource(new UrlRootSource(classLoader, urls));
+  }
+
+  @Test
+  public void testCapturesLoadedClasses() {
+    //loaded to run this test, and in the packages passed to the agent
+    assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/ScanAgentTest.class') != null);
+    //loaded, but not in the packages passed to the agent
+    assert(ScanAgent.liveBytes(Test.classLoader, 'org/junit/Test.class') == null);
+  }
+
+  @Test
+  public void testLiveClasses() {
+    MetricsListener live = new MetricsListener();
+    MetricsListener read = new MetricsListener();
+    assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/ScanOptions.class') != null);
+    ClassScanner liveScanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                                options.withListener(live).withLiveClasses(true));
+    //parsed, so dropped
+    assert(ScanAgent.liveBytes(classLoader, 'classpath/scan/ScanOptions.class') == null);
+    ClassScanner readScanner = new ClassScanner(classLoader, [ 'classpath.scan' ] as String[], null,
+                                                options.withListener(read));
+    assert(live.metrics.classesParsed == read.metrics.classesParsed);
+    assert(live.metrics.bytesRead < read.metrics.bytesRead);
+    assert(liveScanner.findDirectSubTypesOf(Root) == readScanner.findDirectSubTypesOf(Root));
+  }
+}
@@ -0,0 +1,33 @@
+package classpath.scan;
+
+/**
+ * Roots of the classpath the tests run with.  On Java 9 and later the application classloader
+ * is not a URLClassLoader, so the tests scan the entries of java.class.path instead.
+ */
+public class TestRoots {
+
+  public static List<URL> urls(ClassLoader loader) {
+    List<URL> ret = [];
+    for(ClassLoader current = loader; current != null; current = current.parent) {
+      if(current instanceof URLClassLoader) {
+        ret.addAll(((URLClassLoader) current).URLs);
+      }
+    }
+
+    if(ret.isEmpty()) {
+      for(String entry : System.getProperty('java.class.path').split(File.pathSeparator)) {
+        ret.add(new File(entry).toURI().toURL());
+      }
+    }
+
+    return ret;
+  }
+
+  public static ScanOptions options(ClassLoader loader) {
+    if(loader instanceof URLClassLoader) {
+      return ScanOptions.DEFAULT;
+    }
+
+    return ScanOptions.DEFAULT.withoutDefaultRootSource().withRootSource(new UrlRootSource(loader, urls(loader)));
+  }
+}